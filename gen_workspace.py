@@ -0,0 +1,237 @@
+#!/usr/bin/env python2.5
+
+import getopt
+import os
+import random
+import sys
+import sqlite3
+
+SCREENS = 5
+COLUMNS = 4
+ROWS = 4
+HOTSEAT_SIZE = 5
+HOTSEAT_ALL_APPS_INDEX = 2
+
+# Must match LauncherProvider.DATABASE_VERSION, or the provider recreates the table
+DATABASE_VERSION = 9
+
+# Must match folder_max_num_items; Folder.bind() deletes the items past it
+FOLDER_CAPACITY = 16
+
+CONTAINER_DESKTOP = -100
+CONTAINER_HOTSEAT = -101
+ITEM_TYPE_APPLICATION = 0
+ITEM_TYPE_SHORTCUT = 1
+ITEM_TYPE_FOLDER = 2
+ITEM_TYPE_APPWIDGET = 4
+
+APPLICATION_COMPONENTS = [
+  "com.android.calculator2/com.android.calculator2.Calculator",
+  "com.android.providers.downloads.ui/com.android.providers.downloads.ui.DownloadList",
+  "com.android.settings/com.android.settings.Settings",
+  "com.android.mms/com.android.mms.ui.BootActivity",
+  "com.android.contacts/com.android.contacts.activities.PeopleActivity",
+  "com.android.contacts/com.android.contacts.activities.DialtactsActivity"
+]
+
+INTENT_FORMAT = "#Intent;action=android.intent.action.MAIN;category=android.intent.category.LAUNCHER;launchFlags=0x10200000;component=%s;end"
+
+CREATE_FAVORITES = """CREATE TABLE favorites (
+  _id INTEGER PRIMARY KEY,
+  title TEXT,
+  intent TEXT,
+  container INTEGER,
+  screen INTEGER,
+  cellX INTEGER,
+  cellY INTEGER,
+  spanX INTEGER,
+  spanY INTEGER,
+  itemType INTEGER,
+  appWidgetId INTEGER NOT NULL DEFAULT -1,
+  isShortcut INTEGER,
+  iconType INTEGER,
+  iconPackage TEXT,
+  iconResource TEXT,
+  icon BLOB,
+  uri TEXT,
+  displayMode INTEGER
+)"""
+
+INSERT = "INSERT INTO favorites (_id, title, intent, container, screen, cellX, cellY, spanX, spanY, itemType, appWidgetId, iconType) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+
+def usage():
+  print "usage: gen_workspace.py [options] out.db -- generates a launcher.db"
+  print
+  print "  -n count   favorites in total, shortcuts and folders (default 1000,"
+  print "             about as many as the desktop and full folders can hold)"
+  print "  -f count   folders on the desktop, holding the shortcuts that do"
+  print "             not fit on it (default 20, raised until no folder holds"
+  print "             more than %d items or the desktop is full)" % FOLDER_CAPACITY
+  print "  -w count   widgets, with appWidgetIds that are not bound, so the"
+  print "             loader deletes them (default 4)"
+  print "  -d ratio   fraction of shortcuts duplicating an earlier one"
+  print "             (default 0.2)"
+  print "  -c count   corrupt rows: bad intents, uninstalled components,"
+  print "             overlapping cells, missing folders (default 20)"
+  print "  -s seed    random seed (default 0)"
+  print
+  print "Push the result with load_workspace.py to measure the loader."
+
+class Generator:
+  def __init__(self, cursor, seed):
+    self.c = cursor
+    self.random = random.Random(seed)
+    self.next_id = 1
+    self.rows = 0
+    self.intents = []
+
+  def insert(self, title, intent, container, screen, x, y, spanX, spanY,
+      itemType, appWidgetId=-1):
+    id = self.next_id
+    self.next_id += 1
+    self.c.execute(INSERT, (id, title, intent, container, screen, x, y,
+        spanX, spanY, itemType, appWidgetId, 0))
+    self.rows += 1
+    return id
+
+  def shortcut_intent(self, duplicates):
+    if self.intents and self.random.random() < duplicates:
+      return self.random.choice(self.intents)
+    component = APPLICATION_COMPONENTS[len(self.intents) % len(APPLICATION_COMPONENTS)]
+    # Each intent differs by its extras, so that only the chosen duplicates match
+    intent = INTENT_FORMAT.replace(";end",
+        ";i.generated=%d;end" % len(self.intents)) % component
+    self.intents.append(intent)
+    return intent
+
+def desktop_cells():
+  cells = []
+  for s in range(SCREENS):
+    for y in range(ROWS):
+      for x in range(COLUMNS):
+        cells.append((s, x, y))
+  return cells
+
+def generate(fn, favorites, folders, widgets, duplicates, corrupt, seed):
+  if os.path.exists(fn):
+    os.remove(fn)
+  conn = sqlite3.connect(fn)
+  c = conn.cursor()
+  c.execute(CREATE_FAVORITES)
+  c.execute("PRAGMA user_version = %d" % DATABASE_VERSION)
+  g = Generator(c, seed)
+
+  # Widgets take the first 2x2 spans of the first screens
+  free = desktop_cells()
+  for i in range(widgets):
+    s = i / ((COLUMNS / 2) * (ROWS / 2))
+    if s >= SCREENS:
+      break
+    x = (i % (COLUMNS / 2)) * 2
+    y = ((i / (COLUMNS / 2)) % (ROWS / 2)) * 2
+    g.insert("widget", None, CONTAINER_DESKTOP, s, x, y, 2, 2,
+        ITEM_TYPE_APPWIDGET, 100000 + i)
+    for cell in [(s, x, y), (s, x + 1, y), (s, x, y + 1), (s, x + 1, y + 1)]:
+      free.remove(cell)
+
+  # Add folders until the shortcuts which do not fit on the desktop fit in them
+  hotseat = [i for i in range(HOTSEAT_SIZE) if i != HOTSEAT_ALL_APPS_INDEX]
+  folders = min(folders, len(free))
+  while folders < len(free):
+    shortcuts = max(0, favorites - folders)
+    loose = min(shortcuts, len(hotseat) + len(free) - folders)
+    if (shortcuts - loose) <= folders * FOLDER_CAPACITY:
+      break
+    folders += 1
+
+  folder_ids = []
+  for i in range(folders):
+    s, x, y = free.pop(0)
+    folder_ids.append(g.insert("folder %d" % i, None, CONTAINER_DESKTOP, s, x, y,
+        1, 1, ITEM_TYPE_FOLDER))
+
+  shortcuts = max(0, favorites - len(folder_ids))
+  ranks = {}
+  open_folders = list(folder_ids)
+  dropped = 0
+  for i in range(shortcuts):
+    intent = g.shortcut_intent(duplicates)
+    if hotseat:
+      rank = hotseat.pop(0)
+      g.insert("hotseat %d" % i, intent, CONTAINER_HOTSEAT, rank, rank, 0, 1, 1,
+          ITEM_TYPE_APPLICATION)
+    elif free:
+      s, x, y = free.pop(0)
+      g.insert("shortcut %d" % i, intent, CONTAINER_DESKTOP, s, x, y, 1, 1,
+          ITEM_TYPE_APPLICATION)
+    elif open_folders:
+      # Spread the rest over the folders, filling the first ones first, up to their capacity
+      folder = open_folders[min(int(g.random.expovariate(0.5)), len(open_folders) - 1)]
+      rank = ranks.get(folder, 0)
+      ranks[folder] = rank + 1
+      if rank + 1 >= FOLDER_CAPACITY:
+        open_folders.remove(folder)
+      g.insert("item %d" % i, intent, folder, 0, rank % COLUMNS, rank / COLUMNS, 1, 1,
+          ITEM_TYPE_APPLICATION)
+    else:
+      dropped = shortcuts - i
+      break
+
+  for i in range(corrupt):
+    kind = i % 5
+    s = g.random.randrange(SCREENS)
+    x = g.random.randrange(COLUMNS)
+    y = g.random.randrange(ROWS)
+    if kind == 0:
+      g.insert("bad intent %d" % i, "#Intent;component=;garbage", CONTAINER_DESKTOP,
+          s, x, y, 1, 1, ITEM_TYPE_APPLICATION)
+    elif kind == 1:
+      g.insert("uninstalled %d" % i,
+          INTENT_FORMAT % ("com.example.missing%d/.Main" % i), CONTAINER_DESKTOP,
+          s, x, y, 1, 1, ITEM_TYPE_APPLICATION)
+    elif kind == 2:
+      # Lands on a cell that is most likely taken
+      g.insert("overlap %d" % i, g.shortcut_intent(0), CONTAINER_DESKTOP,
+          s, x, y, 1, 1, ITEM_TYPE_APPLICATION)
+    elif kind == 3:
+      g.insert("orphan %d" % i, g.shortcut_intent(0), 1000000 + i,
+          0, 0, 0, 1, 1, ITEM_TYPE_APPLICATION)
+    else:
+      g.insert("no intent %d" % i, None, CONTAINER_DESKTOP, s, x, y, 1, 1,
+          ITEM_TYPE_SHORTCUT)
+
+  conn.commit()
+  c.close()
+  conn.close()
+  print "%s: %d rows, %d folders, %d widgets, %d distinct intents" % (
+      fn, g.rows, len(folder_ids), widgets, len(g.intents))
+  if dropped:
+    print "%s: the desktop is full, %d shortcuts left out" % (fn, dropped)
+
+def main(argv):
+  try:
+    opts, args = getopt.getopt(argv[1:], "n:f:w:d:c:s:")
+  except getopt.GetoptError:
+    usage()
+    sys.exit(1)
+  if len(args) != 1:
+    usage()
+    sys.exit(1)
+  favorites, folders, widgets, duplicates, corrupt, seed = 1000, 20, 4, 0.2, 20, 0
+  for o, a in opts:
+    if o == "-n":
+      favorites = int(a)
+    elif o == "-f":
+      folders = int(a)
+    elif o == "-w":
+      widgets = int(a)
+    elif o == "-d":
+      duplicates = float(a)
+    elif o == "-c":
+      corrupt = int(a)
+    elif o == "-s":
+      seed = int(a)
+  generate(args[0], favorites, folders, widgets, duplicates, corrupt, seed)
+
+if __name__=="__main__":
+  main(sys.argv)
@@ -0,0 +1,114 @@
+#!/usr/bin/env python2.5
+
+import os
+import re
+import sqlite3
+import sys
+import time
+
+PACKAGE = "com.android.launcher3"
+DEVICE_DB = "/data/data/" + PACKAGE + "/databases/launcher.db"
+TIMEOUT = 60
+
+LOADED = re.compile(r"load: Loaded workspace: (\d+) items, (\d+) removed, in (\d+)ms")
+CURRENT_SCREEN = re.compile(r"bind: Bound current screen in (\d+)ms")
+BOUND = re.compile(r"bind: Bound workspace in (\d+)ms")
+DALVIK_HEAP = re.compile(r"^\s*Dalvik Heap\s+(.*)$", re.MULTILINE)
+
+def usage():
+  print "usage: load_workspace.py [-r runs] db... -- measures the workspace loader"
+  print
+  print "Pushes each launcher.db to a rooted device, restarts the launcher and"
+  print "reads the load and bind times back from its event journal"
+  print "(dumpsys activity " + PACKAGE + " load bind). The dbs can be made"
+  print "with gen_workspace.py. The database on the device is overwritten."
+
+def adb(command):
+  pipe = os.popen("adb " + command)
+  output = pipe.read()
+  pipe.close()
+  return output
+
+def count_rows(fn):
+  conn = sqlite3.connect(fn)
+  c = conn.cursor()
+  c.execute("SELECT COUNT(*) FROM favorites")
+  rows = c.fetchone()[0]
+  c.close()
+  conn.close()
+  return rows
+
+def push_file(fn):
+  adb("shell am force-stop " + PACKAGE)
+  adb("shell rm " + DEVICE_DB + "-journal")
+  rv = os.system("adb push " + fn + " " + DEVICE_DB)
+  if rv != 0:
+    print "adb push failed"
+    sys.exit(1)
+  adb("shell chmod 666 " + DEVICE_DB)
+
+def start_launcher():
+  adb("shell am start -W -a android.intent.action.MAIN"
+    + " -c android.intent.category.HOME -n " + PACKAGE + "/.Launcher")
+
+def wait_for_bind():
+  deadline = time.time() + TIMEOUT
+  while time.time() < deadline:
+    journal = adb("shell dumpsys activity " + PACKAGE + " load bind")
+    if BOUND.search(journal):
+      return journal
+    time.sleep(0.5)
+  print "timed out waiting for the workspace to bind"
+  sys.exit(1)
+
+def heap_kb():
+  # The heap only grows while the launcher loads, so its size is the peak so far
+  m = DALVIK_HEAP.search(adb("shell dumpsys meminfo " + PACKAGE))
+  if not m:
+    return -1
+  return int(m.group(1).split()[-3])
+
+def measure(fn):
+  rows = count_rows(fn)
+  push_file(fn)
+  start_launcher()
+  journal = wait_for_bind()
+  items, removed, load_ms = [int(v) for v in LOADED.search(journal).groups()]
+  current_ms = int(CURRENT_SCREEN.search(journal).group(1))
+  bind_ms = int(BOUND.search(journal).group(1))
+  return {
+    "rows": rows,
+    "items": items,
+    "removed": removed,
+    "load_ms": load_ms,
+    "rows_per_s": rows * 1000 / max(load_ms, 1),
+    "first_page_ms": load_ms + current_ms,
+    "bind_ms": bind_ms,
+    "heap_kb": heap_kb()
+  }
+
+COLUMNS = ["rows", "items", "removed", "load_ms", "rows_per_s", "first_page_ms", "bind_ms",
+    "heap_kb"]
+
+def main(argv):
+  args = argv[1:]
+  runs = 1
+  if len(args) >= 2 and args[0] == "-r":
+    runs = int(args[1])
+    args = args[2:]
+  if not args:
+    usage()
+    sys.exit(1)
+
+  print "%-24s %s" % ("db", " ".join(["%13s" % c for c in COLUMNS]))
+  for fn in args:
+    results = [measure(fn) for i in range(runs)]
+    # Report the median of each column, the first run pays for a cold icon cache
+    median = {}
+    for c in COLUMNS:
+      values = sorted([r[c] for r in results])
+      median[c] = values[len(values) / 2]
+    print "%-24s %s" % (os.path.basename(fn), " ".join(["%13d" % median[c] for c in COLUMNS]))
+
+if __name__=="__main__":
+  main(sys.argv)
@@ -154,6 +154,15 @@ public class AllAppsEater extends DeleteDropTarget {
 				}
 			});
 		}
+		// The drag controller caches our hit rect, which moves with the translation
+		moveDown.addUpdateListener(new AnimatorUpdateListener() {
+			@Override
+			public void onAnimationUpdate(ValueAnimator animation) {
+				if (sLauncher != null) {
+					sLauncher.getDragController().invalidateDropTargetGeometry();
+				}
+			}
+		});
 		moveDown.setInterpolator(new DecelerateInterpolator());
 		moveDown.setDuration(ANIMATION_DURATION_INOUT);
 		moveDown.start();
@@ -18,6 +18,9 @@ package com.android.launcher3;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 
 import org.xmlpull.v1.XmlPullParser;
@@ -73,8 +76,19 @@ class AllAppsList {
     static final String STK2_PACKAGE = "com.android.stk2";
 
     private IconCache mIconCache;
+
+    /** Search index over {@link #data}, kept in sync by every mutation below. */
+    final AppSearchIndex mSearchIndex = new AppSearchIndex();
+
+    /** Indexes over {@link #data} so lookups by component or package don't scan the list. */
+    private final HashMap<ComponentName, ApplicationInfo> mComponentIndex =
+            new HashMap<ComponentName, ApplicationInfo>(DEFAULT_APPLICATIONS_NUMBER);
+    private final HashMap<String, ArrayList<ApplicationInfo>> mPackageIndex =
+            new HashMap<String, ArrayList<ApplicationInfo>>(DEFAULT_APPLICATIONS_NUMBER);
     
 	static ArrayList<TopPackage> mTopPackages;
+	/** The top packages keyed by component, built together with mTopPackages. */
+	private static HashMap<ComponentName, TopPackage> sTopPackageIndex;
     
     static class TopPackage {
     	public TopPackage (String packagename,String classname,int order) {
@@ -87,6 +101,8 @@ class AllAppsList {
     	String mPackageName;
     	String mClassName;
     	int mOrder;
+    	// Position in default_toppackage.xml, later entries win ties on mOrder
+    	int mDeclarationIndex;
     }
 
     /**
@@ -107,11 +123,12 @@ class AllAppsList {
             LauncherLog.d(TAG, "Add application in app list: app = " + info.componentName
                     + ",title = " + info.title);
         }
-        if (findActivity(data, info.componentName)) {
+        if (mComponentIndex.containsKey(info.componentName)) {
             return;
         }
         data.add(info);
         added.add(info);
+        addToIndex(info);
     }
     
     public void clear() {
@@ -119,6 +136,9 @@ class AllAppsList {
             LauncherLog.d(TAG, "clear all data in app list: app size = " + data.size());
         }
         data.clear();
+        mComponentIndex.clear();
+        mPackageIndex.clear();
+        mSearchIndex.clear();
         // TODO: do we clear these too?
         added.clear();
         removed.clear();
@@ -133,6 +153,86 @@ class AllAppsList {
         return data.get(index);
     }
 
+    /**
+     * Returns the apps of <em>apps</em> whose title or package name matches the typed text.
+     */
+    public ArrayList<ApplicationInfo> filter(ArrayList<ApplicationInfo> apps, String query) {
+        return mSearchIndex.filter(apps, query);
+    }
+
+    private void addToIndex(ApplicationInfo info) {
+        final ComponentName component = info.componentName;
+        mComponentIndex.put(component, info);
+        ArrayList<ApplicationInfo> apps = mPackageIndex.get(component.getPackageName());
+        if (apps == null) {
+            apps = new ArrayList<ApplicationInfo>(1);
+            mPackageIndex.put(component.getPackageName(), apps);
+        }
+        apps.add(info);
+        mSearchIndex.add(info);
+    }
+
+    private void removeFromIndex(ApplicationInfo info) {
+        final ComponentName component = info.componentName;
+        mComponentIndex.remove(component);
+        final ArrayList<ApplicationInfo> apps = mPackageIndex.get(component.getPackageName());
+        if (apps != null) {
+            apps.remove(info);
+            if (apps.isEmpty()) {
+                mPackageIndex.remove(component.getPackageName());
+            }
+        }
+        mSearchIndex.remove(component);
+    }
+
+    /**
+     * Removes the apps of the given package from data in one compacting pass, except the
+     * ones still listed in <em>keep</em>.
+     *
+     * @param keep the activities of the package which are still enabled, may be null.
+     * @param removeIcons whether to also drop the icon of each removed app from the cache.
+     */
+    private void removeAppsForPackage(String packageName, List<ResolveInfo> keep,
+            boolean removeIcons) {
+        final ArrayList<ApplicationInfo> apps = mPackageIndex.get(packageName);
+        if (apps == null) {
+            return;
+        }
+        int toRemove = 0;
+        for (ApplicationInfo info : apps) {
+            if (keep == null || !findActivity(keep, info.componentName)) {
+                toRemove++;
+            }
+        }
+        if (toRemove == 0) {
+            return;
+        }
+
+        final ArrayList<ApplicationInfo> data = this.data;
+        final int N = data.size();
+        int write = 0;
+        for (int i = 0; i < N; i++) {
+            final ApplicationInfo info = data.get(i);
+            final ComponentName component = info.componentName;
+            if (packageName.equals(component.getPackageName())
+                    && (keep == null || !findActivity(keep, component))) {
+                if (LauncherLog.DEBUG) {
+                    LauncherLog.d(TAG, "Remove application from launcher: component = " + component);
+                }
+                removed.add(info);
+                if (removeIcons) {
+                    mIconCache.remove(component);
+                }
+                removeFromIndex(info);
+            } else {
+                data.set(write++, info);
+            }
+        }
+        for (int i = N - 1; i >= write; i--) {
+            data.remove(i);
+        }
+    }
+
     /**
      * Add the icons for the supplied apk called packageName.
      */
@@ -154,19 +254,11 @@ class AllAppsList {
      * Remove the apps for the given apk identified by packageName.
      */
     public void removePackage(String packageName) {
-        final List<ApplicationInfo> data = this.data;
         if (LauncherLog.DEBUG) {
             LauncherLog.d(TAG, "removePackage: packageName = " + packageName + ",data size = " + data.size());
         }
         
-        for (int i = data.size() - 1; i >= 0; i--) {
-            ApplicationInfo info = data.get(i);
-            final ComponentName component = info.intent.getComponent();
-            if (packageName.equals(component.getPackageName())) {
-                removed.add(info);
-                data.remove(i);
-            }
-        }
+        removeAppsForPackage(packageName, null, false);
         // This is more aggressive than it needs to be.
         mIconCache.flush();
     }
@@ -182,17 +274,7 @@ class AllAppsList {
         if (matches.size() > 0) {
             // Find disabled/removed activities and remove them from data and add them
             // to the removed list.
-            for (int i = data.size() - 1; i >= 0; i--) {
-                final ApplicationInfo applicationInfo = data.get(i);
-                final ComponentName component = applicationInfo.intent.getComponent();
-                if (packageName.equals(component.getPackageName())) {
-                    if (!findActivity(matches, component)) {
-                        removed.add(applicationInfo);
-                        mIconCache.remove(component);
-                        data.remove(i);
-                    }
-                }
-            }
+            removeAppsForPackage(packageName, matches, true);
 
             // Find enabled activities and add them to the adapter
             // Also updates existing activities with new labels/icons
@@ -208,24 +290,15 @@ class AllAppsList {
                     mIconCache.remove(applicationInfo.componentName);
                     mIconCache.getTitleAndIcon(applicationInfo, info, null);
                     modified.add(applicationInfo);
+                    // The label may have changed
+                    mSearchIndex.add(applicationInfo);
                 }
             }
         } else {
         	boolean enabled = Settings.System.getInt(context.getContentResolver(), Settings.System.AIRPLANE_MODE_ON, 0) == 0;
         	if (!enabled || !(STK_PACKAGE.equals(packageName) || STK2_PACKAGE.equals(packageName))) {
             // Remove all data for this package.
-        	for (int i = data.size() - 1; i >= 0; i--) {                
-                final ApplicationInfo applicationInfo = data.get(i);
-                final ComponentName component = applicationInfo.intent.getComponent();
-                if (LauncherLog.DEBUG) {
-                    LauncherLog.d(TAG, "Remove application from launcher: component = " + component);
-                }
-                if (packageName.equals(component.getPackageName())) {
-                    removed.add(applicationInfo);
-                    mIconCache.remove(component);
-                    data.remove(i);
-                }
-            }
+        	removeAppsForPackage(packageName, null, true);
         	}
         }
     }
@@ -236,15 +309,7 @@ class AllAppsList {
      * @param packageName stk package name, may be stk, stk1 or stk2.
      */
     private void removeDisabledStkActivity(String packageName) {
-        for (int i=data.size()-1; i>=0; i--) {
-            final ApplicationInfo applicationInfo = data.get(i);
-            final ComponentName component = applicationInfo.intent.getComponent();
-            if (packageName.equals(component.getPackageName())) {
-                removed.add(applicationInfo);
-                mIconCache.remove(component);
-                data.remove(i);
-            }
-        }
+        removeAppsForPackage(packageName, null, true);
     }
 
     /**
@@ -275,32 +340,11 @@ class AllAppsList {
         return false;
     }
 
-    /**
-     * Returns whether <em>apps</em> contains <em>component</em>.
-     */
-    private static boolean findActivity(ArrayList<ApplicationInfo> apps, ComponentName component) {
-        final int N = apps.size();
-        for (int i=0; i<N; i++) {
-            final ApplicationInfo info = apps.get(i);
-            if (info.componentName.equals(component)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     /**
      * Find an ApplicationInfo object for the given packageName and className.
      */
     private ApplicationInfo findApplicationInfoLocked(String packageName, String className) {
-        for (ApplicationInfo info: data) {
-            final ComponentName component = info.intent.getComponent();
-            if (packageName.equals(component.getPackageName())
-                    && className.equals(component.getClassName())) {
-                return info;
-            }
-        }
-        return null;
+        return mComponentIndex.get(new ComponentName(packageName, className));
     }
     
     /**
@@ -313,6 +357,7 @@ class AllAppsList {
     	
     	if (mTopPackages == null) {
     		mTopPackages = new ArrayList<TopPackage>();
+    		sTopPackageIndex = new HashMap<ComponentName, TopPackage>();
     	} else {
     		return true;
     	}
@@ -334,9 +379,15 @@ class AllAppsList {
 
                 TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.TopPackage);                    
                 
-                mTopPackages.add(new TopPackage(a.getString(R.styleable.TopPackage_topPackageName),
+                final TopPackage tp = new TopPackage(
+                		a.getString(R.styleable.TopPackage_topPackageName),
                 		a.getString(R.styleable.TopPackage_topClassName),
-                		a.getInt(R.styleable.TopPackage_topOrder, 0)));
+                		a.getInt(R.styleable.TopPackage_topOrder, 0));
+                tp.mDeclarationIndex = mTopPackages.size();
+                mTopPackages.add(tp);
+                if (tp.mPackageName != null && tp.mClassName != null) {
+                	sTopPackageIndex.put(new ComponentName(tp.mPackageName, tp.mClassName), tp);
+                }
                 
                 Xlog.d(TAG, "loadTopPackage packageName==" + a.getString(R.styleable.TopPackage_topPackageName)); 
                 Xlog.d(TAG, "loadTopPackage className==" + a.getString(R.styleable.TopPackage_topClassName));
@@ -353,23 +404,76 @@ class AllAppsList {
     }   
     
     static int getTopPackageIndex(ApplicationInfo appInfo) {
-    	int retIndex = -1;
-        if (mTopPackages == null || mTopPackages.isEmpty() || appInfo == null) {
-        	return retIndex;
-        } 
-        
-        for (TopPackage tp : mTopPackages) {        	                
-    		if (appInfo.componentName.getPackageName().equals(tp.mPackageName) 
-    				&& appInfo.componentName.getClassName().equals(tp.mClassName)) {
-
-    			retIndex = tp.mOrder;    			
-    			break;
-    		}               	                
-        } 
-        
-        return retIndex;        
+        if (sTopPackageIndex == null || appInfo == null) {
+        	return -1;
+        }
+        final TopPackage tp = sTopPackageIndex.get(appInfo.componentName);
+        return tp != null ? tp.mOrder : -1;
     }
-    
+
+    /**
+     * Orders top packages by their target position. When two of them want the same position
+     * the one declared last goes first, as it would when inserting them one after another.
+     */
+    private static final Comparator<ApplicationInfo> TOP_PACKAGE_ORDER =
+            new Comparator<ApplicationInfo>() {
+        public final int compare(ApplicationInfo a, ApplicationInfo b) {
+            final TopPackage tpA = sTopPackageIndex.get(a.componentName);
+            final TopPackage tpB = sTopPackageIndex.get(b.componentName);
+            final int orderA = Math.max(tpA.mOrder, 0);
+            final int orderB = Math.max(tpB.mOrder, 0);
+            if (orderA != orderB) {
+                return orderA < orderB ? -1 : 1;
+            }
+            return tpB.mDeclarationIndex - tpA.mDeclarationIndex;
+        }
+    };
+
+    /**
+     * Moves the apps listed in default_toppackage.xml to their configured positions in
+     * <em>list</em>, keeping the relative order of all other apps.
+     *
+     * The top packages are pulled out in one pass, sorted by position and merged back in a
+     * second pass, so this is O(N + T log T) rather than one remove/insert per top package.
+     */
+    static void placeTopPackages(ArrayList<ApplicationInfo> list) {
+        if (sTopPackageIndex == null || sTopPackageIndex.isEmpty() || list == null
+                || list.isEmpty()) {
+            return;
+        }
+
+        final int N = list.size();
+        final ArrayList<ApplicationInfo> top = new ArrayList<ApplicationInfo>();
+        final ArrayList<ApplicationInfo> rest = new ArrayList<ApplicationInfo>(N);
+        for (int i = 0; i < N; i++) {
+            final ApplicationInfo info = list.get(i);
+            if (sTopPackageIndex.containsKey(info.componentName)) {
+                top.add(info);
+            } else {
+                rest.add(info);
+            }
+        }
+        if (top.isEmpty()) {
+            return;
+        }
+        Collections.sort(top, TOP_PACKAGE_ORDER);
+
+        list.clear();
+        final int topCount = top.size();
+        final int restCount = rest.size();
+        int t = 0;
+        int r = 0;
+        while (t < topCount || r < restCount) {
+            if (t < topCount && (r >= restCount
+                    || Math.max(sTopPackageIndex.get(top.get(t).componentName).mOrder, 0)
+                            <= list.size())) {
+                list.add(top.get(t++));
+            } else {
+                list.add(rest.get(r++));
+            }
+        }
+    }
+
     void reorderApplist() {
         final long sortTime = DEBUG_LOADERS_REORDER ? SystemClock.uptimeMillis() : 0;                                
         
@@ -377,60 +481,10 @@ class AllAppsList {
         	return ;
         }
         
-        ArrayList<ApplicationInfo> dataReorder =
-            new ArrayList<ApplicationInfo>(DEFAULT_APPLICATIONS_NUMBER); 
-        
-        for (TopPackage tp : mTopPackages) { 
-        	int loop = 0;
-        	int newIndex = 0;
-        	for (ApplicationInfo ai : added) {
-        		if (DEBUG_LOADERS_REORDER) {
-        			Xlog.d(TAG, "reorderApplist remove loop==" + loop);
-        			Xlog.d(TAG, "reorderApplist remove packageName==" + ai.componentName.getPackageName()); 
-        		}
-                
-        		if (ai.componentName.getPackageName().equals(tp.mPackageName) 
-        				&& ai.componentName.getClassName().equals(tp.mClassName)) {
-            		if (DEBUG_LOADERS_REORDER) {
-            			Xlog.d(TAG, "reorderApplist remove newIndex==" + newIndex); 
-            		}
-            		
-            		data.remove(ai);
-            		dataReorder.add(ai);	
-
-        			dumpData();
-        			
-        			break;
-        		}
-        		loop++;
-        	}                	                
-        }  
-        
-        for (TopPackage tp : mTopPackages) { 
-        	int loop = 0;
-        	int newIndex = 0;
-        	for (ApplicationInfo ai : dataReorder) {
-        		if (DEBUG_LOADERS_REORDER) {
-        			Xlog.d(TAG, "reorderApplist added loop==" + loop);
-        			Xlog.d(TAG, "reorderApplist added packageName==" + ai.componentName.getPackageName()); 
-        		}
-                
-        		if (ai.componentName.getPackageName().equals(tp.mPackageName) 
-        				&& ai.componentName.getClassName().equals(tp.mClassName)) {
-        			newIndex = Math.min(Math.max(tp.mOrder, 0), added.size());
-            		if (DEBUG_LOADERS_REORDER) {
-            			Xlog.d(TAG, "reorderApplist added newIndex==" + newIndex); 
-            		}
-
-            		data.add(newIndex,ai);	
-
-        			dumpData();
-        			
-        			break;
-        		}
-        		loop++;
-        	}                	                
-        } 
+        placeTopPackages(data);
+        if (DEBUG_LOADERS_REORDER) {
+        	dumpData();
+        }
         
         if (added.size() == data.size()) {
         	added = (ArrayList<ApplicationInfo>) data.clone();	
@@ -462,6 +516,7 @@ class AllAppsList {
     		if (ai.componentName.getPackageName().equals(wifiSettingPkgName) &&
     				ai.componentName.getClassName().equals(wifiSettingClassName)) {
     			 data.remove(ai);
+    			 removeFromIndex(ai);
     			 break;
     		 }
     	 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Separable blur over alpha-only buffers, approximating a gaussian with three box blur passes.
+ *
+ * Buffers hold one alpha value in [0, 255] per int, row-major, and everything outside of them
+ * counts as transparent, like the bitmaps extracted for BlurMaskFilter. The engine keeps its
+ * scratch lines between calls, so it is not thread-safe; use one instance per thread. Large
+ * buffers are split in bands of rows (or columns) which are blurred on a small shared pool.
+ * The class only uses plain Java so that it can be measured on the host, see tests/host.
+ */
+class AlphaBlur {
+    static final String TAG = "Launcher.AlphaBlur";
+
+    /** Number of box passes; three is within a few percent of a true gaussian. */
+    private static final int PASSES = 3;
+    /** Buffers with fewer pixels than this are blurred on the calling thread. */
+    private static final int PARALLEL_MIN_PIXELS = 64 * 1024;
+
+    private static final int THREAD_COUNT =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static ExecutorService sPool;
+
+    private final int[] mBoxSizes = new int[PASSES];
+    /** One scratch line per band. */
+    private int[][] mLines = new int[THREAD_COUNT][0];
+
+    /**
+     * Returns the gaussian sigma Skia uses for a BlurMaskFilter of the given radius.
+     */
+    static float sigmaForRadius(float radius) {
+        return radius > 0 ? 0.57735f * radius + 0.5f : 0;
+    }
+
+    /**
+     * Computes the widths of {@link #PASSES} box blurs whose succession approximates a gaussian
+     * of the given sigma. All widths are odd.
+     */
+    static void boxSizesForGauss(float sigma, int[] sizes) {
+        final int n = sizes.length;
+        final double ideal = Math.sqrt(12 * sigma * sigma / n + 1);
+        int lower = (int) Math.floor(ideal);
+        if (lower % 2 == 0) {
+            lower--;
+        }
+        final int upper = lower + 2;
+        final double mIdeal = (12 * sigma * sigma - n * lower * lower - 4 * n * lower - 3 * n)
+                / (-4.0 * lower - 4);
+        final int m = (int) Math.round(mIdeal);
+        for (int i = 0; i < n; i++) {
+            sizes[i] = i < m ? lower : upper;
+        }
+    }
+
+    /**
+     * Blurs the buffer in place.
+     *
+     * @param alpha width * height alpha values.
+     */
+    void blur(final int[] alpha, final int width, final int height, float sigma) {
+        if (sigma <= 0 || width <= 0 || height <= 0) {
+            return;
+        }
+        boxSizesForGauss(sigma, mBoxSizes);
+        final int lineLength = Math.max(width, height);
+        for (int i = 0; i < mLines.length; i++) {
+            if (mLines[i].length < lineLength) {
+                mLines[i] = new int[lineLength];
+            }
+        }
+
+        final int bands = width * height >= PARALLEL_MIN_PIXELS ? THREAD_COUNT : 1;
+        for (int pass = 0; pass < PASSES; pass++) {
+            final int radius = (mBoxSizes[pass] - 1) / 2;
+            if (radius <= 0) {
+                continue;
+            }
+            runBands(bands, height, new Band() {
+                public void run(int band, int start, int end) {
+                    for (int y = start; y < end; y++) {
+                        boxLine(alpha, y * width, 1, width, radius, mLines[band]);
+                    }
+                }
+            });
+            runBands(bands, width, new Band() {
+                public void run(int band, int start, int end) {
+                    for (int x = start; x < end; x++) {
+                        boxLine(alpha, x, width, height, radius, mLines[band]);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Box blurs one row or column of the buffer with a running sum.
+     *
+     * @param offset index of the first value of the line.
+     * @param stride distance between two consecutive values of the line.
+     * @param line scratch array of at least length values.
+     */
+    private static void boxLine(int[] alpha, int offset, int stride, int length, int radius,
+            int[] line) {
+        for (int i = 0, p = offset; i < length; i++, p += stride) {
+            line[i] = alpha[p];
+        }
+        final int window = 2 * radius + 1;
+        final int half = window / 2;
+        int sum = 0;
+        for (int i = 0; i < radius && i < length; i++) {
+            sum += line[i];
+        }
+        for (int i = 0, p = offset; i < length; i++, p += stride) {
+            final int in = i + radius;
+            if (in < length) {
+                sum += line[in];
+            }
+            final int out = i - radius - 1;
+            if (out >= 0) {
+                sum -= line[out];
+            }
+            alpha[p] = (sum + half) / window;
+        }
+    }
+
+    private interface Band {
+        void run(int band, int start, int end);
+    }
+
+    /**
+     * Splits [0, count) in bands and runs them, on the pool if there is more than one.
+     */
+    private static void runBands(int bands, int count, final Band task) {
+        if (bands <= 1 || count < bands) {
+            task.run(0, 0, count);
+            return;
+        }
+        final ExecutorService pool = getPool();
+        final CountDownLatch done = new CountDownLatch(bands - 1);
+        final int bandSize = (count + bands - 1) / bands;
+        for (int b = 1; b < bands; b++) {
+            final int band = b;
+            final int start = b * bandSize;
+            final int end = Math.min(count, start + bandSize);
+            pool.execute(new Runnable() {
+                public void run() {
+                    try {
+                        if (start < end) {
+                            task.run(band, start, end);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        // The calling thread takes the first band
+        task.run(0, 0, Math.min(count, bandSize));
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            // The bands still finish on the pool, only our wait for them was cut short
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static synchronized ExecutorService getPool() {
+        if (sPool == null) {
+            sPool = Executors.newFixedThreadPool(THREAD_COUNT - 1, new ThreadFactory() {
+                private int mCount;
+
+                public Thread newThread(Runnable r) {
+                    final Thread t = new Thread(r, "launcher-blur-" + (mCount++));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return sPool;
+    }
+}
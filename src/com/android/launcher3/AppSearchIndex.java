@@ -0,0 +1,340 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+
+import android.content.ComponentName;
+
+/**
+ * In-memory prefix index over the titles and package names of all apps.
+ *
+ * The index is maintained incrementally by {@link AllAppsList} on the loader thread and queried
+ * from the UI thread for the type-to-filter mode of the all apps tab. Every trie node keeps the
+ * set of apps having a token with that prefix, so a prefix lookup is O(query length) and a fuzzy
+ * lookup only visits the nodes within one edit of the query.
+ */
+class AppSearchIndex {
+    static final String TAG = "Launcher.AppSearchIndex";
+
+    /** Queries shorter than this are not matched fuzzily, they would match almost everything. */
+    private static final int MIN_FUZZY_QUERY_LENGTH = 3;
+
+    private static class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        final HashSet<ComponentName> apps = new HashSet<ComponentName>(2);
+
+        Node child(char c) {
+            final char[] keys = this.keys;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node getOrCreateChild(char c) {
+            Node child = child(c);
+            if (child == null) {
+                final int n = keys.length;
+                char[] newKeys = new char[n + 1];
+                Node[] newChildren = new Node[n + 1];
+                System.arraycopy(keys, 0, newKeys, 0, n);
+                System.arraycopy(children, 0, newChildren, 0, n);
+                child = new Node();
+                newKeys[n] = c;
+                newChildren[n] = child;
+                keys = newKeys;
+                children = newChildren;
+            }
+            return child;
+        }
+
+        void removeChild(Node child) {
+            final int n = children.length;
+            for (int i = 0; i < n; i++) {
+                if (children[i] == child) {
+                    char[] newKeys = new char[n - 1];
+                    Node[] newChildren = new Node[n - 1];
+                    System.arraycopy(keys, 0, newKeys, 0, i);
+                    System.arraycopy(children, 0, newChildren, 0, i);
+                    System.arraycopy(keys, i + 1, newKeys, i, n - i - 1);
+                    System.arraycopy(children, i + 1, newChildren, i, n - i - 1);
+                    keys = newKeys;
+                    children = newChildren;
+                    return;
+                }
+            }
+        }
+    }
+
+    private final Node mRoot = new Node();
+    private final HashMap<ComponentName, ApplicationInfo> mApps =
+            new HashMap<ComponentName, ApplicationInfo>();
+    private final HashMap<ComponentName, String[]> mTokens =
+            new HashMap<ComponentName, String[]>();
+
+    /**
+     * Adds the app to the index, or re-indexes it if its title has changed.
+     */
+    synchronized void add(ApplicationInfo info) {
+        final ComponentName component = info.componentName;
+        if (mApps.containsKey(component)) {
+            removeTokens(component);
+        }
+        final String[] tokens = tokenize(info);
+        for (String token : tokens) {
+            Node node = mRoot;
+            for (int i = 0; i < token.length(); i++) {
+                node = node.getOrCreateChild(token.charAt(i));
+                node.apps.add(component);
+            }
+        }
+        mApps.put(component, info);
+        mTokens.put(component, tokens);
+    }
+
+    synchronized void remove(ComponentName component) {
+        if (mApps.remove(component) != null) {
+            removeTokens(component);
+        }
+    }
+
+    synchronized void clear() {
+        mRoot.keys = new char[0];
+        mRoot.children = new Node[0];
+        mApps.clear();
+        mTokens.clear();
+    }
+
+    synchronized int size() {
+        return mApps.size();
+    }
+
+    private void removeTokens(ComponentName component) {
+        final String[] tokens = mTokens.remove(component);
+        if (tokens == null) {
+            return;
+        }
+        for (String token : tokens) {
+            removeToken(mRoot, token, 0, component);
+        }
+    }
+
+    private static void removeToken(Node node, String token, int index, ComponentName component) {
+        if (index == token.length()) {
+            return;
+        }
+        final Node child = node.child(token.charAt(index));
+        if (child == null) {
+            return;
+        }
+        child.apps.remove(component);
+        removeToken(child, token, index + 1, component);
+        if (child.apps.isEmpty()) {
+            node.removeChild(child);
+        }
+    }
+
+    /**
+     * Returns the apps which have a title word or package segment starting with each word of
+     * the query.
+     */
+    synchronized HashSet<ComponentName> queryPrefix(String query) {
+        final String[] words = splitQuery(query);
+        if (words.length == 0) {
+            return new HashSet<ComponentName>();
+        }
+        HashSet<ComponentName> result = null;
+        for (String q : words) {
+            Node node = mRoot;
+            for (int i = 0; i < q.length() && node != null; i++) {
+                node = node.child(q.charAt(i));
+            }
+            if (node == null) {
+                return new HashSet<ComponentName>();
+            }
+            result = intersect(result, node.apps);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the apps matching each word of the query as a prefix, allowing one substituted,
+     * inserted or missing character per word of at least {@link #MIN_FUZZY_QUERY_LENGTH}
+     * characters.
+     */
+    synchronized HashSet<ComponentName> queryFuzzy(String query) {
+        final String[] words = splitQuery(query);
+        if (words.length == 0) {
+            return new HashSet<ComponentName>();
+        }
+        HashSet<ComponentName> result = null;
+        final HashSet<ComponentName> matches = new HashSet<ComponentName>();
+        for (String q : words) {
+            matches.clear();
+            collectFuzzy(mRoot, q, 0, q.length() < MIN_FUZZY_QUERY_LENGTH ? 0 : 1, matches);
+            result = intersect(result, matches);
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the apps of both sets; a null <em>result</em> stands for the first word, whose
+     * matches are copied.
+     */
+    private static HashSet<ComponentName> intersect(HashSet<ComponentName> result,
+            HashSet<ComponentName> apps) {
+        if (result == null) {
+            return new HashSet<ComponentName>(apps);
+        }
+        result.retainAll(apps);
+        return result;
+    }
+
+    /**
+     * Returns the normalized words of the query, e.g. "goo ma" gives "goo" and "ma".
+     */
+    private static String[] splitQuery(String query) {
+        final String q = normalize(query);
+        return q.length() == 0 ? new String[0] : q.split("\\s+");
+    }
+
+    private static void collectFuzzy(Node node, String q, int index, int edits,
+            HashSet<ComponentName> result) {
+        if (index == q.length()) {
+            if (node != null) {
+                result.addAll(node.apps);
+            }
+            return;
+        }
+        final char c = q.charAt(index);
+        final Node exact = node.child(c);
+        if (exact != null) {
+            collectFuzzy(exact, q, index + 1, edits, result);
+        }
+        if (edits == 0) {
+            return;
+        }
+        // Extra character typed
+        if (index > 0) {
+            collectFuzzy(node, q, index + 1, edits - 1, result);
+        }
+        final char[] keys = node.keys;
+        final Node[] children = node.children;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == c) {
+                continue;
+            }
+            // Wrong character typed
+            collectFuzzy(children[i], q, index + 1, edits - 1, result);
+            // Character left out
+            final Node skipped = children[i].child(c);
+            if (skipped != null) {
+                collectFuzzy(skipped, q, index + 1, edits - 1, result);
+            }
+        }
+    }
+
+    /**
+     * Returns the indexed apps in <em>apps</em> order which match the query, prefix matches
+     * first, followed by the fuzzy ones.
+     */
+    ArrayList<ApplicationInfo> filter(ArrayList<ApplicationInfo> apps, String query) {
+        final HashSet<ComponentName> prefix = queryPrefix(query);
+        final HashSet<ComponentName> fuzzy = queryFuzzy(query);
+        final ArrayList<ApplicationInfo> result = new ArrayList<ApplicationInfo>();
+        final int count = apps.size();
+        for (int i = 0; i < count; i++) {
+            final ApplicationInfo info = apps.get(i);
+            if (prefix.contains(info.componentName)) {
+                result.add(info);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            final ApplicationInfo info = apps.get(i);
+            if (!prefix.contains(info.componentName) && fuzzy.contains(info.componentName)) {
+                result.add(info);
+            }
+        }
+        return result;
+    }
+
+    private static String[] tokenize(ApplicationInfo info) {
+        final ArrayList<String> tokens = new ArrayList<String>();
+        if (info.title != null) {
+            final String title = normalize(info.title.toString());
+            addWords(title, tokens);
+            // Also index the whole title so that queries typed without spaces, such as
+            // "googlemaps", still hit
+            final String compact = title.replace(" ", "");
+            if (compact.length() > 0 && !tokens.contains(compact)) {
+                tokens.add(compact);
+            }
+        }
+        final String packageName = info.componentName.getPackageName();
+        for (String segment : normalize(packageName).split("\\.")) {
+            if (segment.length() > 0 && !tokens.contains(segment)) {
+                tokens.add(segment);
+            }
+        }
+        return tokens.toArray(new String[tokens.size()]);
+    }
+
+    private static void addWords(String s, ArrayList<String> tokens) {
+        int start = -1;
+        for (int i = 0; i <= s.length(); i++) {
+            final boolean isWordChar = i < s.length() && Character.isLetterOrDigit(s.charAt(i));
+            if (isWordChar && start < 0) {
+                start = i;
+            } else if (!isWordChar && start >= 0) {
+                final String word = s.substring(start, i);
+                if (!tokens.contains(word)) {
+                    tokens.add(word);
+                }
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * Lower-cases the string and strips accents so that "É" matches "e".
+     */
+    static String normalize(String s) {
+        if (s == null) {
+            return "";
+        }
+        final String decomposed = Normalizer.normalize(s.trim(), Normalizer.Form.NFD);
+        final StringBuilder sb = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            final char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                sb.append(c);
+            }
+        }
+        return sb.toString().toLowerCase(Locale.getDefault());
+    }
+}
@@ -195,6 +195,9 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     // Content
     private ArrayList<ApplicationInfo> mApps;
     private ArrayList<Object> mWidgets;
+    // The apps matching the type-to-filter text, null when no filter is active
+    private ArrayList<ApplicationInfo> mFilteredApps;
+    private String mFilterText;
 
     // Cling
     private boolean mHasShownAllAppsCling;
@@ -482,7 +485,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
                     i = (currentPage * numItemsPerPage) + (childCount / 2);
                 }
             } else {
-                int numApps = mApps.size();
+                int numApps = getShownApps().size();
                 PagedViewGridLayout layout = (PagedViewGridLayout) getPageAtByCurrent(currentPage);
                 int numItemsPerPage = mWidgetCountX * mWidgetCountY;
                 int childCount = layout.getChildCount();
@@ -516,12 +519,13 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     int getPageForComponent(int index) {
         if (index < 0) return 0;
 
-        if (index < mApps.size()) {
+        final int numApps = getShownApps().size();
+        if (index < numApps) {
             int numItemsPerPage = mCellCountX * mCellCountY;
             return (index / numItemsPerPage);
         } else {
             int numItemsPerPage = mWidgetCountX * mWidgetCountY;
-            return mNumAppsPages + ((index - mApps.size()) / numItemsPerPage);
+            return mNumAppsPages + ((index - numApps) / numItemsPerPage);
         }
     }
 
@@ -544,7 +548,9 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     private void updatePageCounts() {
         mNumWidgetPages = (int) Math.ceil(mWidgets.size() /
                 (float) (mWidgetCountX * mWidgetCountY));
-        mNumAppsPages = (int) Math.ceil((float) mApps.size() / (mCellCountX * mCellCountY));
+        // Keep one (empty) apps page around when nothing matches the filter
+        mNumAppsPages = Math.max(isFiltering() ? 1 : 0, (int) Math.ceil(
+                (float) getShownApps().size() / (mCellCountX * mCellCountY)));
 //        final int count = getChildCount();
         if (mNumWidgetPages + mNumAppsPages > 70 || (mNumWidgetPages + mNumAppsPages) <= 0) {
 			return;
@@ -937,6 +943,39 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         }
     }
 
+    /**
+     * Counts the widget previews loaded in the widget pages and adds up their memory.
+     *
+     * @param outBytes receives the preview memory in its first element, in bytes.
+     * @return the number of previews.
+     */
+    int getWidgetPreviewFootprint(long[] outBytes) {
+        int previews = 0;
+        long bytes = 0;
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            View v = getPageAt(i);
+            if (!(v instanceof PagedViewGridLayout)) {
+                continue;
+            }
+            final PagedViewGridLayout layout = (PagedViewGridLayout) v;
+            final int childCount = layout.getChildCount();
+            for (int j = 0; j < childCount; j++) {
+                final ImageView image =
+                        (ImageView) layout.getChildAt(j).findViewById(R.id.widget_preview);
+                if (image != null && image.getDrawable() instanceof FastBitmapDrawable) {
+                    final Bitmap b = ((FastBitmapDrawable) image.getDrawable()).getBitmap();
+                    if (b != null && !b.isRecycled()) {
+                        previews++;
+                        bytes += b.getRowBytes() * b.getHeight();
+                    }
+                }
+            }
+        }
+        outBytes[0] = bytes;
+        return previews;
+    }
+
     private void cancelAllTasks() {
         if (LauncherLog.DEBUG) {
             LauncherLog.d(TAG, "cancelAllTasks: mRunningTasks size = " + mRunningTasks.size());
@@ -1032,18 +1071,17 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         // ensure that we have the right number of items on the pages
         int numCells = mCellCountX * mCellCountY;
         int startIndex = page * numCells;
-        int endIndex = Math.min(startIndex + numCells, mApps.size());
+        final ArrayList<ApplicationInfo> apps = getShownApps();
+        int endIndex = Math.min(startIndex + numCells, apps.size());
         PagedViewCellLayout layout = (PagedViewCellLayout) getPageAt(page);
-        if (LauncherLog.DEBUG) {
-            LauncherLog.d(TAG, "syncAppsPageItems: page = " + page + ",immediate = " + immediate
-                    + ",numCells = " + numCells + ",startIndex = " + startIndex + ",endIndex = "
-                    + endIndex + ",this = " + this);
-        }
+        LauncherLog.event(LauncherLog.CAT_APPS, LauncherLog.LEVEL_DEBUG,
+                "syncAppsPageItems: page = %d, immediate = %d, startIndex = %d, endIndex = %d",
+                page, immediate ? 1 : 0, startIndex, endIndex);
         layout.removeAllViewsOnPage();
         ArrayList<Object> items = new ArrayList<Object>();
         ArrayList<Bitmap> images = new ArrayList<Bitmap>();
         for (int i = startIndex; i < endIndex; ++i) {
-            ApplicationInfo info = mApps.get(i);
+            ApplicationInfo info = apps.get(i);
             PagedViewIcon icon = (PagedViewIcon) mLayoutInflater.inflate(
                     R.layout.apps_customize_application, layout, false);
             icon.applyFromApplicationInfo(info, true, mHolographicOutlineHelper);
@@ -1692,6 +1730,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         mApps = list;
         Collections.sort(mApps, LauncherModel.APP_NAME_COMPARATOR);
         reorderApps();
+        refilterApps();
         updatePageCounts();
 
         // The next layout pass will trigger data-ready if both widgets and apps are set, so 
@@ -1718,6 +1757,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         }
         addAppsWithoutInvalidate(list);
         reorderApps();
+        refilterApps();
         updatePageCounts();
         invalidatePageData();
     }
@@ -1753,6 +1793,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         }
         removeAppsWithoutInvalidate(list);
         reorderApps();
+        refilterApps();
         updatePageCounts();
         invalidatePageData();
     }
@@ -1767,11 +1808,47 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         // place in the list.
         removeAppsWithoutInvalidate(list);
         addAppsWithoutInvalidate(list);
+        refilterApps();
         updatePageCounts();
 
         invalidatePageData();
     }
 
+    /**
+     * Restricts the apps pages to the apps whose title or package name matches the given text,
+     * or shows all apps again if the text is empty.
+     */
+    void setAppFilter(String text) {
+        final String filter = (text == null || text.trim().length() == 0) ? null : text;
+        if (filter == null && mFilterText == null) {
+            return;
+        }
+        if (LauncherLog.DEBUG) {
+            LauncherLog.d(TAG, "setAppFilter: text = " + filter + ",this = " + this);
+        }
+        mFilterText = filter;
+        refilterApps();
+        updatePageCounts();
+        invalidatePageData(0);
+    }
+
+    boolean isFiltering() {
+        return mFilterText != null;
+    }
+
+    private void refilterApps() {
+        if (mFilterText == null) {
+            mFilteredApps = null;
+        } else {
+            mFilteredApps = mLauncher.getModel().getAllAppsList().filter(mApps, mFilterText);
+        }
+    }
+
+    /** Returns the apps the apps pages are built from, taking the filter into account. */
+    private ArrayList<ApplicationInfo> getShownApps() {
+        return mFilteredApps != null ? mFilteredApps : mApps;
+    }
+
     @Override
     public void reset() {
         AppsCustomizeTabHost tabHost = getTabHost();
@@ -1874,33 +1951,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
 			return;
 		}
 
-		ArrayList<ApplicationInfo> dataReorder = new ArrayList<ApplicationInfo>(
-				AllAppsList.DEFAULT_APPLICATIONS_NUMBER);
-
-		for (AllAppsList.TopPackage tp : AllAppsList.mTopPackages) {
-			int loop = 0;
-			for (ApplicationInfo ai : mApps) {
-				if (ai.componentName.getPackageName().equals(tp.mPackageName)
-						&& ai.componentName.getClassName().equals(tp.mClassName)) {
-					mApps.remove(ai);
-					dataReorder.add(ai);
-					break;
-				}
-				loop++;
-			}
-		}
-
-		for (AllAppsList.TopPackage tp : AllAppsList.mTopPackages) {
-			int newIndex = 0;
-			for (ApplicationInfo ai : dataReorder) {
-				if (ai.componentName.getPackageName().equals(tp.mPackageName)
-						&& ai.componentName.getClassName().equals(tp.mClassName)) {
-					newIndex = Math.min(Math.max(tp.mOrder, 0), mApps.size());
-					mApps.add(newIndex, ai);
-					break;
-				}
-			}
-		}
+		AllAppsList.placeTopPackages(mApps);
     }
     
     /**
@@ -184,19 +184,31 @@ public class BubbleTextView extends TextView {
     }
 
     /**
-     * Returns a new bitmap to be used as the object outline, e.g. to visualize the drop location.
-     * Responsibility for the bitmap is transferred to the caller.
+     * Returns a bitmap to be used as the object outline, e.g. to visualize the drop location.
+     * The bitmap may be shared with the outline cache and must not be modified.
      */
     private Bitmap createGlowingOutline(Canvas canvas, int outlineColor, int glowColor) {
         final int padding = HolographicOutlineHelper.MAX_OUTER_BLUR_RADIUS;
-        final Bitmap b = Bitmap.createBitmap(
-                getWidth() + padding, getHeight() + padding, Bitmap.Config.ARGB_8888);
+        final int width = getWidth() + padding;
+        final int height = getHeight() + padding;
+
+        // Pressing or focusing the same icon again reuses the outline computed last time
+        final Object content = HolographicOutlineHelper.getOutlineContent(this);
+        final Bitmap cached = HolographicOutlineHelper.getCachedOutline(content, width, height,
+                HolographicOutlineHelper.EXTRA_THICK, glowColor, outlineColor);
+        if (cached != null) {
+            return cached;
+        }
+
+        final Bitmap b = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
 
         canvas.setBitmap(b);
         drawWithPadding(canvas, padding);
         mOutlineHelper.applyExtraThickExpensiveOutlineWithBlur(b, canvas, glowColor, outlineColor);
         canvas.setBitmap(null);
 
+        HolographicOutlineHelper.putCachedOutline(content, HolographicOutlineHelper.EXTRA_THICK,
+                glowColor, outlineColor, b);
         return b;
     }
 
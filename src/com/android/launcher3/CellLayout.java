@@ -45,8 +45,10 @@ import android.view.View;
 import android.view.ViewDebug;
 import android.view.ViewGroup;
 import android.view.animation.Animation;
+import android.view.animation.AccelerateDecelerateInterpolator;
 import android.view.animation.DecelerateInterpolator;
 import android.view.animation.LayoutAnimationController;
+import android.view.animation.LinearInterpolator;
 
 import com.android.launcher3.FolderIcon.FolderRingAnimator;
 
@@ -82,7 +84,7 @@ public class CellLayout extends ViewGroup implements BackgroundAlphable {
     private final PointF mTmpPointF = new PointF();
     int[] mTempLocation = new int[2];
 
-    boolean[][] mOccupied;
+    CellOccupancy mOccupied;
     private boolean mLastDownOnOccupiedCell = false;
 
     private OnTouchListener mInterceptTouchListener;
@@ -126,6 +128,10 @@ public class CellLayout extends ViewGroup implements BackgroundAlphable {
 
     private HashMap<CellLayout.LayoutParams, ObjectAnimator> mReorderAnimators = new
             HashMap<CellLayout.LayoutParams, ObjectAnimator>();
+    // Children moved by animateChildrenToPositions(), mapped to the animator shared by their batch.
+    // A child leaves its batch when another reorder animation takes it over.
+    private HashMap<CellLayout.LayoutParams, ValueAnimator> mReorderBatches = new
+            HashMap<CellLayout.LayoutParams, ValueAnimator>();
 
     // When a drag operation is in progress, holds the nearest cell to the touch point
     private final int[] mDragCell = new int[2];
@@ -173,7 +179,7 @@ public class CellLayout extends ViewGroup implements BackgroundAlphable {
         mMaxGap = a.getDimensionPixelSize(R.styleable.CellLayout_maxGap, 0);
         mCountX = LauncherModel.getCellCountX();
         mCountY = LauncherModel.getCellCountY();
-        mOccupied = new boolean[mCountX][mCountY];
+        mOccupied = new CellOccupancy(mCountX, mCountY);
 
         a.recycle();
 
@@ -307,7 +313,7 @@ public class CellLayout extends ViewGroup implements BackgroundAlphable {
     public void setGridSize(int x, int y) {
         mCountX = x;
         mCountY = y;
-        mOccupied = new boolean[mCountX][mCountY];
+        mOccupied = new CellOccupancy(mCountX, mCountY);
         requestLayout();
     }
 
@@ -1023,6 +1029,13 @@ public class CellLayout extends ViewGroup implements BackgroundAlphable {
 //        super.setFastAlpha(alpha);
     }
 
+    /**
+     * Returns the alpha last applied through {@link #setFastAlpha(float)}.
+     */
+    float getChildrenAlpha() {
+        return mChildren.getAlpha();
+    }
+
     private void setChildrenAlpha(float alpha) {
         final int childCount = getChildCount();
         for (int i = 0; i < childCount; i++) {
@@ -1044,20 +1057,17 @@ public class CellLayout extends ViewGroup implements BackgroundAlphable {
     public boolean animateChildToPosition(final View child, int cellX, int cellY, int duration,
             int delay) {
         CellLayoutChildren clc = getChildrenLayout();
-        if (clc.indexOfChild(child) != -1 && !mOccupied[cellX][cellY]) {
+        if (clc.indexOfChild(child) != -1 && !mOccupied.get(cellX, cellY)) {
             final LayoutParams lp = (LayoutParams) child.getLayoutParams();
             final ItemInfo info = (ItemInfo) child.getTag();
 
             // We cancel any existing animations
-            if (mReorderAnimators.containsKey(lp)) {
-                mReorderAnimators.get(lp).cancel();
-                mReorderAnimators.remove(lp);
-            }
+            cancelReorderAnimation(lp);
 
             int oldX = lp.x;
             int oldY = lp.y;
-            mOccupied[lp.cellX][lp.cellY] = false;
-            mOccupied[cellX][cellY] = true;
+            mOccupied.set(lp.cellX, lp.cellY, false);
+            mOccupied.set(cellX, cellY, true);
 
             lp.isLockedToGrid = true;
             lp.cellX = info.cellX = cellX;
@@ -1105,6 +1115,140 @@ public class CellLayout extends ViewGroup implements BackgroundAlphable {
         return false;
     }
 
+    private void cancelReorderAnimation(LayoutParams lp) {
+        if (mReorderAnimators.containsKey(lp)) {
+            mReorderAnimators.get(lp).cancel();
+            mReorderAnimators.remove(lp);
+        }
+        // The rest of the batch keeps animating
+        mReorderBatches.remove(lp);
+    }
+
+    /**
+     * Moves every child to its new cell at once, then animates all of them there from a single
+     * animator. This is cheaper than {@link #animateChildToPosition} per child when reordering
+     * a whole run of items, and the cells may form a chain where each child takes the cell of
+     * the next one.
+     *
+     * @param cells the destination { cellX, cellY } of each child.
+     * @param delays the delay of each child's animation, relative to the start of the batch.
+     * @return false, without moving anything, if a child is not in this layout or a destination
+     *         is occupied by a child which is not part of the batch.
+     */
+    public boolean animateChildrenToPositions(ArrayList<View> children, ArrayList<int[]> cells,
+            final int duration, final int[] delays) {
+        final CellLayoutChildren clc = getChildrenLayout();
+        final int count = children.size();
+        if (count == 0) {
+            return true;
+        }
+        for (int i = 0; i < count; i++) {
+            if (clc.indexOfChild(children.get(i)) == -1) {
+                return false;
+            }
+        }
+
+        // Free the cells of the whole batch first, so that chained moves are allowed
+        for (int i = 0; i < count; i++) {
+            final LayoutParams lp = (LayoutParams) children.get(i).getLayoutParams();
+            mOccupied.set(lp.cellX, lp.cellY, false);
+        }
+        int placed = 0;
+        for (; placed < count; placed++) {
+            final int[] cell = cells.get(placed);
+            if (cell[0] < 0 || cell[0] >= mCountX || cell[1] < 0 || cell[1] >= mCountY
+                    || mOccupied.get(cell[0], cell[1])) {
+                break;
+            }
+            mOccupied.set(cell[0], cell[1], true);
+        }
+        if (placed < count) {
+            for (int i = 0; i < placed; i++) {
+                mOccupied.set(cells.get(i)[0], cells.get(i)[1], false);
+            }
+            for (int i = 0; i < count; i++) {
+                final LayoutParams lp = (LayoutParams) children.get(i).getLayoutParams();
+                mOccupied.set(lp.cellX, lp.cellY, true);
+            }
+            return false;
+        }
+
+        final LayoutParams[] lps = new LayoutParams[count];
+        final int[] from = new int[count * 2];
+        final int[] to = new int[count * 2];
+        int totalDuration = 0;
+        for (int i = 0; i < count; i++) {
+            final View child = children.get(i);
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+            final ItemInfo info = (ItemInfo) child.getTag();
+            final int[] cell = cells.get(i);
+            cancelReorderAnimation(lp);
+
+            from[2 * i] = lp.x;
+            from[2 * i + 1] = lp.y;
+
+            lp.isLockedToGrid = true;
+            lp.cellX = info.cellX = cell[0];
+            lp.cellY = info.cellY = cell[1];
+            clc.setupLp(lp);
+            lp.isLockedToGrid = false;
+            to[2 * i] = lp.x;
+            to[2 * i + 1] = lp.y;
+
+            lp.x = from[2 * i];
+            lp.y = from[2 * i + 1];
+            lps[i] = lp;
+            totalDuration = Math.max(totalDuration, delays[i] + duration);
+        }
+
+        final ValueAnimator va = ValueAnimator.ofFloat(0f, totalDuration);
+        va.setDuration(totalDuration);
+        va.setInterpolator(new LinearInterpolator());
+        // Same easing as the ObjectAnimators of animateChildToPosition
+        final TimeInterpolator easing = new AccelerateDecelerateInterpolator();
+        for (int i = 0; i < count; i++) {
+            mReorderBatches.put(lps[i], va);
+        }
+        va.addUpdateListener(new AnimatorUpdateListener() {
+            public void onAnimationUpdate(ValueAnimator animation) {
+                final float elapsed = (Float) animation.getAnimatedValue();
+                for (int i = 0; i < count; i++) {
+                    final LayoutParams lp = lps[i];
+                    if (mReorderBatches.get(lp) != va) {
+                        continue;
+                    }
+                    float t = (elapsed - delays[i]) / duration;
+                    t = easing.getInterpolation(Math.max(0f, Math.min(1f, t)));
+                    lp.x = (int) (from[2 * i] + t * (to[2 * i] - from[2 * i]));
+                    lp.y = (int) (from[2 * i + 1] + t * (to[2 * i + 1] - from[2 * i + 1]));
+                }
+                clc.requestLayout();
+            }
+        });
+        va.addListener(new AnimatorListenerAdapter() {
+            boolean cancelled = false;
+            public void onAnimationEnd(Animator animation) {
+                for (int i = 0; i < count; i++) {
+                    final LayoutParams lp = lps[i];
+                    if (mReorderBatches.get(lp) == va) {
+                        // If the animation was cancelled, don't lock the items into place yet,
+                        // like animateChildToPosition
+                        if (!cancelled) {
+                            lp.isLockedToGrid = true;
+                        }
+                        mReorderBatches.remove(lp);
+                    }
+                }
+                clc.requestLayout();
+            }
+            public void onAnimationCancel(Animator animation) {
+                cancelled = true;
+            }
+        });
+        va.start();
+        return true;
+    }
+
     /**
      * Estimate where the top left cell of the dragged item will land if it is dropped.
      *
@@ -1253,53 +1397,24 @@ public class CellLayout extends ViewGroup implements BackgroundAlphable {
 
         // For items with a spanX / spanY > 1, the passed in point (pixelX, pixelY) corresponds
         // to the center of the item, but we are searching based on the top-left cell, so
-        // we translate the point over to correspond to the top-left.
-        pixelX -= (mCellWidth + mWidthGap) * (spanX - 1) / 2f;
-        pixelY -= (mCellHeight + mHeightGap) * (spanY - 1) / 2f;
-
-        // Keep track of best-scoring drop area
+        // we translate the point over to correspond to the top-left. Everything is doubled so
+        // that the half cell offsets stay exact in integers.
+        final int strideX = mCellWidth + mWidthGap;
+        final int strideY = mCellHeight + mHeightGap;
+        final int pointX2 = 2 * pixelX - strideX * (spanX - 1);
+        final int pointY2 = 2 * pixelY - strideY * (spanY - 1);
+        final int originX2 = 2 * (getPaddingLeft() + mCellWidth / 2);
+        final int originY2 = 2 * (getPaddingTop() + mCellHeight / 2);
+
+        // Keep track of best-scoring drop area, by squared distance
         final int[] bestXY = result != null ? result : new int[2];
-        double bestDistance = Double.MAX_VALUE;
+        mOccupied.findNearest(pointX2, pointY2, originX2, originY2, 2 * strideX, 2 * strideY,
+                spanX, spanY, ignoreOccupied, bestXY);
 
-        final int countX = mCountX;
-        final int countY = mCountY;
-        final boolean[][] occupied = mOccupied;
-
-        for (int y = 0; y < countY - (spanY - 1); y++) {
-            inner:
-            for (int x = 0; x < countX - (spanX - 1); x++) {
-                if (ignoreOccupied) {
-                    for (int i = 0; i < spanX; i++) {
-                        for (int j = 0; j < spanY; j++) {
-                            if (occupied[x + i][y + j]) {
-                                // small optimization: we can skip to after the column we
-                                // just found an occupied cell
-                                x += i;
-                                continue inner;
-                            }
-                        }
-                    }
-                }
-                final int[] cellXY = mTmpXY;
-                cellToCenterPoint(x, y, cellXY);
-
-                double distance = Math.sqrt(Math.pow(cellXY[0] - pixelX, 2)
-                        + Math.pow(cellXY[1] - pixelY, 2));
-                if (distance <= bestDistance) {
-                    bestDistance = distance;
-                    bestXY[0] = x;
-                    bestXY[1] = y;
-                }
-            }
-        }
         // re-mark space taken by ignoreView as occupied
         markCellsAsOccupiedForView(ignoreView);
 
-        // Return -1, -1 if no suitable location found
-        if (bestDistance == Double.MAX_VALUE) {
-            bestXY[0] = -1;
-            bestXY[1] = -1;
-        }
+        // bestXY is -1, -1 if no suitable location was found
         return bestXY;
     }
 
@@ -1420,17 +1535,9 @@ public class CellLayout extends ViewGroup implements BackgroundAlphable {
             }
 
             for (int y = startY; y < endY && !foundCell; y++) {
-                inner:
                 for (int x = startX; x < endX; x++) {
-                    for (int i = 0; i < spanX; i++) {
-                        for (int j = 0; j < spanY; j++) {
-                            if (mOccupied[x + i][y + j]) {
-                                // small optimization: we can skip to after the column we just found
-                                // an occupied cell
-                                x += i;
-                                continue inner;
-                            }
-                        }
+                    if (!mOccupied.isSpanFree(x, y, spanX, spanY)) {
+                        continue;
                     }
                     if (cellXY != null) {
                         cellXY[0] = x;
@@ -1609,40 +1716,11 @@ public class CellLayout extends ViewGroup implements BackgroundAlphable {
      * @return True if a vacant cell was found
      */
     public boolean getVacantCell(int[] vacant, int spanX, int spanY) {
-
-        return findVacantCell(vacant, spanX, spanY, mCountX, mCountY, mOccupied);
-    }
-
-    static boolean findVacantCell(int[] vacant, int spanX, int spanY,
-            int xCount, int yCount, boolean[][] occupied) {
-
-        for (int y = 0; y < yCount; y++) {
-            for (int x = 0; x < xCount; x++) {
-                boolean available = !occupied[x][y];
-out:            for (int i = x; i < x + spanX - 1 && x < xCount; i++) {
-                    for (int j = y; j < y + spanY - 1 && y < yCount; j++) {
-                        available = available && !occupied[i][j];
-                        if (!available) break out;
-                    }
-                }
-
-                if (available) {
-                    vacant[0] = x;
-                    vacant[1] = y;
-                    return true;
-                }
-            }
-        }
-
-        return false;
+        return mOccupied.findFirstVacant(spanX, spanY, vacant);
     }
 
     private void clearOccupiedCells() {
-        for (int x = 0; x < mCountX; x++) {
-            for (int y = 0; y < mCountY; y++) {
-                mOccupied[x][y] = false;
-            }
-        }
+        mOccupied.clear();
     }
 
     /**
@@ -1652,45 +1730,29 @@ out:            for (int i = x; i < x + spanX - 1 && x < xCount; i++) {
      */
     public void getExpandabilityArrayForView(View view, int[] expandability) {
         final LayoutParams lp = (LayoutParams) view.getLayoutParams();
-        boolean flag;
+        final CellOccupancy occupied = mOccupied;
 
         expandability[AppWidgetResizeFrame.LEFT] = 0;
         for (int x = lp.cellX - 1; x >= 0; x--) {
-            flag = false;
-            for (int y = lp.cellY; y < lp.cellY + lp.cellVSpan; y++) {
-                if (mOccupied[x][y]) flag = true;
-            }
-            if (flag) break;
+            if (!occupied.isSpanFree(x, lp.cellY, 1, lp.cellVSpan)) break;
             expandability[AppWidgetResizeFrame.LEFT]++;
         }
 
         expandability[AppWidgetResizeFrame.TOP] = 0;
         for (int y = lp.cellY - 1; y >= 0; y--) {
-            flag = false;
-            for (int x = lp.cellX; x < lp.cellX + lp.cellHSpan; x++) {
-                if (mOccupied[x][y]) flag = true;
-            }
-            if (flag) break;
+            if (!occupied.isSpanFree(lp.cellX, y, lp.cellHSpan, 1)) break;
             expandability[AppWidgetResizeFrame.TOP]++;
         }
 
         expandability[AppWidgetResizeFrame.RIGHT] = 0;
         for (int x = lp.cellX + lp.cellHSpan; x < mCountX; x++) {
-            flag = false;
-            for (int y = lp.cellY; y < lp.cellY + lp.cellVSpan; y++) {
-                if (mOccupied[x][y]) flag = true;
-            }
-            if (flag) break;
+            if (!occupied.isSpanFree(x, lp.cellY, 1, lp.cellVSpan)) break;
             expandability[AppWidgetResizeFrame.RIGHT]++;
         }
 
         expandability[AppWidgetResizeFrame.BOTTOM] = 0;
         for (int y = lp.cellY + lp.cellVSpan; y < mCountY; y++) {
-            flag = false;
-            for (int x = lp.cellX; x < lp.cellX + lp.cellHSpan; x++) {
-                if (mOccupied[x][y]) flag = true;
-            }
-            if (flag) break;
+            if (!occupied.isSpanFree(lp.cellX, y, lp.cellHSpan, 1)) break;
             expandability[AppWidgetResizeFrame.BOTTOM]++;
         }
     }
@@ -1714,11 +1776,7 @@ out:            for (int i = x; i < x + spanX - 1 && x < xCount; i++) {
     }
 
     public void markCellsForView(int cellX, int cellY, int spanX, int spanY, boolean value) {
-        for (int x = cellX; x < cellX + spanX && x < mCountX; x++) {
-            for (int y = cellY; y < cellY + spanY && y < mCountY; y++) {
-                mOccupied[x][y] = value;
-            }
-        }
+        mOccupied.markSpan(cellX, cellY, spanX, spanY, value);
     }
 
     public int getDesiredWidth() {
@@ -1733,7 +1791,7 @@ out:            for (int i = x; i < x + spanX - 1 && x < xCount; i++) {
 
     public boolean isOccupied(int x, int y) {
         if (x < mCountX && y < mCountY) {
-            return mOccupied[x][y];
+            return mOccupied.get(x, y);
         } else {
             throw new RuntimeException("Position exceeds the bound of this CellLayout");
         }
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+/**
+ * Occupancy of a grid of cells, stored as one bitmask per row.
+ *
+ * A summed-area table over the occupied cells is rebuilt lazily after the grid changes, so
+ * "is this span free" is answered in constant time no matter how large the span is. None of
+ * the queries allocate, which matters because they run on every drag move. The class only uses
+ * plain Java so that it can be measured on the host, see tests/host.
+ */
+class CellOccupancy {
+    /** Widest grid a row bitmask can hold. */
+    static final int MAX_COUNT_X = 64;
+
+    final int countX;
+    final int countY;
+
+    private final long[] mRows;
+    /** (countX + 1) x (countY + 1) prefix sums of occupied cells, row-major. */
+    private final int[] mSums;
+    private boolean mSumsDirty = true;
+
+    CellOccupancy(int countX, int countY) {
+        if (countX > MAX_COUNT_X) {
+            throw new IllegalArgumentException("Grid is too wide: " + countX);
+        }
+        this.countX = countX;
+        this.countY = countY;
+        mRows = new long[countY];
+        mSums = new int[(countX + 1) * (countY + 1)];
+    }
+
+    boolean get(int x, int y) {
+        return (mRows[y] & (1L << x)) != 0;
+    }
+
+    void set(int x, int y, boolean occupied) {
+        if (occupied) {
+            mRows[y] |= 1L << x;
+        } else {
+            mRows[y] &= ~(1L << x);
+        }
+        mSumsDirty = true;
+    }
+
+    /**
+     * Marks a span, clipping whatever falls outside of the grid.
+     */
+    void markSpan(int cellX, int cellY, int spanX, int spanY, boolean occupied) {
+        final int startX = Math.max(cellX, 0);
+        final int endX = Math.min(cellX + spanX, countX);
+        final int endY = Math.min(cellY + spanY, countY);
+        if (startX >= endX) {
+            return;
+        }
+        final long mask = rowMask(startX, endX - startX);
+        for (int y = Math.max(cellY, 0); y < endY; y++) {
+            if (occupied) {
+                mRows[y] |= mask;
+            } else {
+                mRows[y] &= ~mask;
+            }
+        }
+        mSumsDirty = true;
+    }
+
+    void clear() {
+        for (int y = 0; y < countY; y++) {
+            mRows[y] = 0;
+        }
+        mSumsDirty = true;
+    }
+
+    private static long rowMask(int x, int spanX) {
+        final long bits = spanX >= 64 ? -1L : (1L << spanX) - 1;
+        return bits << x;
+    }
+
+    private void updateSums() {
+        if (!mSumsDirty) {
+            return;
+        }
+        final int stride = countX + 1;
+        final int[] sums = mSums;
+        for (int y = 0; y < countY; y++) {
+            final long row = mRows[y];
+            int rowSum = 0;
+            for (int x = 0; x < countX; x++) {
+                if ((row & (1L << x)) != 0) {
+                    rowSum++;
+                }
+                sums[(y + 1) * stride + x + 1] = sums[y * stride + x + 1] + rowSum;
+            }
+        }
+        mSumsDirty = false;
+    }
+
+    /**
+     * Returns the number of occupied cells in the span, which must lie within the grid.
+     */
+    int countOccupied(int cellX, int cellY, int spanX, int spanY) {
+        updateSums();
+        final int stride = countX + 1;
+        final int x1 = cellX + spanX;
+        final int y1 = cellY + spanY;
+        final int[] sums = mSums;
+        return sums[y1 * stride + x1] - sums[cellY * stride + x1]
+                - sums[y1 * stride + cellX] + sums[cellY * stride + cellX];
+    }
+
+    /**
+     * Returns whether the span lies within the grid and none of its cells is occupied.
+     */
+    boolean isSpanFree(int cellX, int cellY, int spanX, int spanY) {
+        if (cellX < 0 || cellY < 0 || cellX + spanX > countX || cellY + spanY > countY) {
+            return false;
+        }
+        return countOccupied(cellX, cellY, spanX, spanY) == 0;
+    }
+
+    /**
+     * Finds the first free span in reading order.
+     *
+     * @param result receives the top-left cell of the span if one is found.
+     * @return true if a free span was found.
+     */
+    boolean findFirstVacant(int spanX, int spanY, int[] result) {
+        for (int y = 0; y + spanY <= countY; y++) {
+            for (int x = 0; x + spanX <= countX; x++) {
+                if (countOccupied(x, y, spanX, spanY) == 0) {
+                    if (result != null) {
+                        result[0] = x;
+                        result[1] = y;
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the top-left cell of the span whose top-left cell center is closest to the given
+     * point. All coordinates are in pixels, scaled by two by the caller so that half pixels
+     * stay exact; distances are compared squared, in integers.
+     *
+     * @param originX2 twice the x of the center of cell (0, 0).
+     * @param originY2 twice the y of the center of cell (0, 0).
+     * @param strideX2 twice the horizontal distance between two cell centers.
+     * @param strideY2 twice the vertical distance between two cell centers.
+     * @param vacantOnly whether the span has to be free.
+     * @param result receives the cell, or (-1, -1) if there is none.
+     * @return result
+     */
+    int[] findNearest(int pointX2, int pointY2, int originX2, int originY2, int strideX2,
+            int strideY2, int spanX, int spanY, boolean vacantOnly, int[] result) {
+        long bestDistance = Long.MAX_VALUE;
+        int bestX = -1;
+        int bestY = -1;
+        for (int y = 0; y + spanY <= countY; y++) {
+            final long dy = originY2 + (long) y * strideY2 - pointY2;
+            final long dy2 = dy * dy;
+            if (dy2 > bestDistance) {
+                // Rows only get further away from here on if we are past the point
+                if (originY2 + (long) y * strideY2 > pointY2) {
+                    break;
+                }
+                continue;
+            }
+            for (int x = 0; x + spanX <= countX; x++) {
+                if (vacantOnly && countOccupied(x, y, spanX, spanY) != 0) {
+                    continue;
+                }
+                final long dx = originX2 + (long) x * strideX2 - pointX2;
+                final long distance = dx * dx + dy2;
+                // Ties go to the later cell, like the original scan did
+                if (distance <= bestDistance) {
+                    bestDistance = distance;
+                    bestX = x;
+                    bestY = y;
+                }
+            }
+        }
+        result[0] = bestX;
+        result[1] = bestY;
+        return result;
+    }
+}
@@ -35,6 +35,13 @@ public class DeferredHandler {
     private LinkedList<Runnable> mQueue = new LinkedList<Runnable>();
     private MessageQueue mMessageQueue = Looper.myQueue();
     private Impl mHandler = new Impl();
+    // Posted to wake the message queue up so that it goes idle again
+    private final Runnable mIdleTrigger = new Runnable() {
+        public void run() {
+            LauncherLog.event(LauncherLog.CAT_QUEUE, LauncherLog.LEVEL_VERBOSE,
+                    "scheduleNextLocked: idle trigger");
+        }
+    };
 
     private class Impl extends Handler implements MessageQueue.IdleHandler {
         public void handleMessage(Message msg) {
@@ -86,11 +93,8 @@ public class DeferredHandler {
     public void postIdle(final Runnable runnable) {
     	long currentTime = SystemClock.uptimeMillis();
         post(new IdleRunnable(runnable));
-        if(LauncherLog.DEBUG) {
-			LauncherLog.d(TAG, " postIdle waited "
-					+ (SystemClock.uptimeMillis() - currentTime)
-					+ " ms for previous step");
-    	}
+        LauncherLog.event(LauncherLog.CAT_QUEUE, LauncherLog.LEVEL_DEBUG,
+                "postIdle: waited %d ms for previous step", SystemClock.uptimeMillis() - currentTime);
     }
 
     public void cancelRunnable(Runnable runnable) {
@@ -111,13 +115,7 @@ public class DeferredHandler {
             if (peek instanceof IdleRunnable) {
                 mMessageQueue.addIdleHandler(mHandler);
                 if( mQueue.size() == 1){
-                	mHandler.post(new Runnable(){
-						public void run() {
-							// the trigger runnable
-							LauncherLog.d(TAG, "scheduleNextLocked: mMessageQueue "
-			    					+ mMessageQueue + ", this = "+this );
-						}
-                	});
+                	mHandler.post(mIdleTrigger);
                 }
             } else {
                 mHandler.sendEmptyMessage(1);
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+import android.view.animation.Interpolator;
+
+/**
+ * Precomputed curves of the 3D desktop scroll effect for one workspace state.
+ *
+ * Workspace keeps one table for normal scrolling and one for dot dragging, so that
+ * screenScrolled() only does array lookups instead of evaluating interpolators and reading
+ * resources on every frame.
+ */
+class DesktopTransformTable {
+    /** Number of intervals sampled over [0, 1]; the scale curve covers [-1, 1]. */
+    private static final int SAMPLES = 256;
+
+    /** Alpha curves never go below this while dot dragging. */
+    private static final float DOT_DRAG_MIN_ALPHA = 0.35f;
+    private static final float MIN_SCALE = 0.6f;
+
+    final float maxRotation;
+    final float maxTranslation;
+    final boolean dotDragging;
+
+    private final float[] mAccelerateAlpha = new float[SAMPLES + 1];
+    private final float[] mLessAccelerateAlpha = new float[SAMPLES + 1];
+    private final float[] mScale = new float[2 * SAMPLES + 1];
+
+    /**
+     * @param alpha the interpolator behind the fast background alpha curve.
+     * @param lessAlpha the interpolator behind the slower alpha curve.
+     * @param scale the interpolator behind the dot drag shrink.
+     * @param baseScale the spring loaded shrink factor the scale curve starts from.
+     */
+    DesktopTransformTable(boolean dotDragging, float maxRotation, float maxTranslation,
+            Interpolator alpha, Interpolator lessAlpha, Interpolator scale, float baseScale) {
+        this.dotDragging = dotDragging;
+        this.maxRotation = maxRotation;
+        this.maxTranslation = maxTranslation;
+        for (int i = 0; i <= SAMPLES; i++) {
+            final float x = i / (float) SAMPLES;
+            mAccelerateAlpha[i] = clampAlpha(alpha.getInterpolation(x));
+            mLessAccelerateAlpha[i] = clampAlpha(lessAlpha.getInterpolation(x));
+        }
+        for (int i = 0; i <= 2 * SAMPLES; i++) {
+            final float x = i / (float) SAMPLES - 1f;
+            mScale[i] = Math.max(MIN_SCALE,
+                    baseScale * (1 - Math.abs(scale.getInterpolation(x))));
+        }
+    }
+
+    private float clampAlpha(float alpha) {
+        return dotDragging ? Math.max(DOT_DRAG_MIN_ALPHA, alpha) : alpha;
+    }
+
+    private static float lookup(float[] table, float x) {
+        final float pos = x * SAMPLES;
+        if (pos <= 0) {
+            return table[0];
+        }
+        final int last = table.length - 1;
+        if (pos >= last) {
+            return table[last];
+        }
+        final int i = (int) pos;
+        final float t = pos - i;
+        return table[i] + (table[i + 1] - table[i]) * t;
+    }
+
+    /** The fast accelerating alpha curve, x in [0, 1]. */
+    float accelerateAlpha(float x) {
+        return lookup(mAccelerateAlpha, x);
+    }
+
+    /** The slower accelerating alpha curve, x in [0, 1]. */
+    float lessAccelerateAlpha(float x) {
+        return lookup(mLessAccelerateAlpha, x);
+    }
+
+    /** The dot drag shrink for a page at the given scroll progress, in [-1, 1]. */
+    float scale(float progress) {
+        return lookup(mScale, progress + 1f);
+    }
+}
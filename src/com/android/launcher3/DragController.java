@@ -22,16 +22,19 @@ import android.graphics.Point;
 import android.graphics.Rect;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.os.Vibrator;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewConfiguration;
+import android.view.ViewTreeObserver;
 import android.view.inputmethod.InputMethodManager;
 
 import com.android.launcher3.R;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 
 /**
@@ -64,8 +67,8 @@ public class DragController {
     private final Vibrator mVibrator = new Vibrator();
 
     // temporaries to avoid gc thrash
-    private Rect mRectTemp = new Rect();
     private final int[] mCoordinatesTemp = new int[2];
+    private final int[] mLocationTemp = new int[2];
 
     /** Whether or not we're dragging. */
     private boolean mDragging;
@@ -110,6 +113,43 @@ public class DragController {
     private int mTmpPoint[] = new int[2];
     private Rect mDragLayerRect = new Rect();
 
+    private final int mScrollSlop;
+
+    // Hit rects and locations of mDropTargets in DragLayer coordinates, in the same order.
+    // They are rebuilt lazily after a layout, a scroll or a state transition, so that a move
+    // event does not have to walk the view hierarchy for every drop target.
+    private final ArrayList<Rect> mDropTargetRects = new ArrayList<Rect>();
+    private int[] mDropTargetLocations = new int[0];
+    private boolean mDropTargetGeometryValid;
+    private ViewTreeObserver mObservedTree;
+
+    private final ViewTreeObserver.OnGlobalLayoutListener mLayoutListener =
+            new ViewTreeObserver.OnGlobalLayoutListener() {
+        public void onGlobalLayout() {
+            mDropTargetGeometryValid = false;
+        }
+    };
+    private final ViewTreeObserver.OnScrollChangedListener mScrollChangedListener =
+            new ViewTreeObserver.OnScrollChangedListener() {
+        public void onScrollChanged() {
+            mDropTargetGeometryValid = false;
+        }
+    };
+
+    /** Drag-over passes are coalesced to at most one per frame. */
+    private static final int MIN_MOVE_INTERVAL_MS = 16;
+    private long mLastMoveTime;
+    private boolean mMovePending;
+    private int mPendingMoveX;
+    private int mPendingMoveY;
+    private int mCoalescedMoves;
+    private final FrameStats mFrameStats = FrameStats.get("DragController");
+    private final Runnable mPendingMoveRunnable = new Runnable() {
+        public void run() {
+            flushPendingMove();
+        }
+    };
+
     /**
      * Interface to receive notifications when a drag starts or stops
      */
@@ -140,6 +180,7 @@ public class DragController {
         mLauncher = launcher;
         mHandler = new Handler();
         mScrollZone = launcher.getResources().getDimensionPixelSize(R.dimen.scroll_zone);
+        mScrollSlop = ViewConfiguration.get(launcher).getScaledWindowTouchSlop();
     }
 
     public boolean dragging() {
@@ -302,6 +343,10 @@ public class DragController {
         }
 
         dragView.show(mMotionDownX, mMotionDownY);
+        observeDragLayer(true);
+        invalidateDropTargetGeometry();
+        mMovePending = false;
+        mLastMoveTime = 0;
         handleMoveEvent(mMotionDownX, mMotionDownY);
     }
 
@@ -406,6 +451,9 @@ public class DragController {
         }
         if (mDragging) {
             mDragging = false;
+            mMovePending = false;
+            mHandler.removeCallbacks(mPendingMoveRunnable);
+            observeDragLayer(false);
             for (DragListener listener : mListeners) {
                 listener.onDragEnd();
             }
@@ -477,7 +525,41 @@ public class DragController {
         return mMoveTarget != null && mMoveTarget.dispatchUnhandledMove(focused, direction);
     }
 
+    /**
+     * Moves the drag view right away, but runs the drag-over pass at most once per frame; a
+     * pass that comes too early is deferred and only the latest position is kept.
+     */
+    private void handleMoveEventCoalesced(int x, int y) {
+        mDragObject.dragView.move(x, y);
+        mPendingMoveX = x;
+        mPendingMoveY = y;
+        if (mMovePending) {
+            mCoalescedMoves++;
+            return;
+        }
+        final long delay = mLastMoveTime + MIN_MOVE_INTERVAL_MS - SystemClock.uptimeMillis();
+        if (delay > 0) {
+            mMovePending = true;
+            mHandler.postDelayed(mPendingMoveRunnable, delay);
+        } else {
+            handleMoveEvent(x, y);
+        }
+    }
+
+    private void flushPendingMove() {
+        if (mMovePending) {
+            mMovePending = false;
+            mHandler.removeCallbacks(mPendingMoveRunnable);
+            if (mDragging) {
+                handleMoveEvent(mPendingMoveX, mPendingMoveY);
+            }
+        }
+    }
+
     private void handleMoveEvent(int x, int y) {
+        final long start = FrameStats.begin();
+        mLastMoveTime = SystemClock.uptimeMillis();
+        mMovePending = false;
         mDragObject.dragView.move(x, y);
 
         // Drop on someone?
@@ -511,9 +593,13 @@ public class DragController {
 
         // After a scroll, the touch point will still be in the scroll region.
         // Rather than scrolling immediately, require a bit of twiddling to scroll again
-        final int slop = ViewConfiguration.get(mLauncher).getScaledWindowTouchSlop();
-        mDistanceSinceScroll +=
-            Math.sqrt(Math.pow(mLastTouch[0] - x, 2) + Math.pow(mLastTouch[1] - y, 2));
+        final int slop = mScrollSlop;
+        if (mDistanceSinceScroll <= slop) {
+            // Only the comparison against the slop matters, so stop measuring once past it
+            final int dx = mLastTouch[0] - x;
+            final int dy = mLastTouch[1] - y;
+            mDistanceSinceScroll += (int) Math.sqrt(dx * dx + dy * dy);
+        }
         mLastTouch[0] = x;
         mLastTouch[1] = y;
 
@@ -541,6 +627,7 @@ public class DragController {
                 mDragScroller.onExitScrollArea();
             }
         }
+        mFrameStats.end(FrameStats.DRAG_MOVE, start);
     }
 
     /**
@@ -576,10 +663,12 @@ public class DragController {
             }
             break;
         case MotionEvent.ACTION_MOVE:
-            handleMoveEvent(dragLayerX, dragLayerY);
+            handleMoveEventCoalesced(dragLayerX, dragLayerY);
             break;
         case MotionEvent.ACTION_UP:
             // Ensure that we've processed a move event at the current pointer location.
+            mMovePending = false;
+            mHandler.removeCallbacks(mPendingMoveRunnable);
             handleMoveEvent(dragLayerX, dragLayerY);
 
             mHandler.removeCallbacks(mScrollRunnable);
@@ -619,27 +708,23 @@ public class DragController {
     }
 
     private DropTarget findDropTarget(int x, int y, int[] dropCoordinates) {
-        final Rect r = mRectTemp;
+        if (!mDropTargetGeometryValid || mLauncher.isStateTransitionRunning()) {
+            updateDropTargetGeometry();
+        }
 
         final ArrayList<DropTarget> dropTargets = mDropTargets;
+        final int[] locations = mDropTargetLocations;
         final int count = dropTargets.size();
         for (int i=count-1; i>=0; i--) {
             DropTarget target = dropTargets.get(i);
             if (!target.isDropEnabled())
                 continue;
- 
-            target.getHitRect(r);
 
-            // Convert the hit rect to DragLayer coordinates
-            if (target instanceof AllAppsEater) {//modified by leeyb, support for garbage drag operation
-            	mLauncher.getDragLayer().offsetDescendantRectToMyCoords2((View) target, r, false);
-            } else {
-            	target.getLocationInDragLayer(dropCoordinates);
-                r.offset(dropCoordinates[0] - target.getLeft(), dropCoordinates[1] - target.getTop());
-            }
             mDragObject.x = x;
             mDragObject.y = y;
-            if (r.contains(x, y)) {
+            if (mDropTargetRects.get(i).contains(x, y)) {
+                dropCoordinates[0] = locations[2 * i];
+                dropCoordinates[1] = locations[2 * i + 1];
                 DropTarget delegate = target.getDropTargetDelegate(mDragObject);
                 if (delegate != null) {
                     target = delegate;
@@ -656,6 +741,65 @@ public class DragController {
         return null;
     }
 
+    /**
+     * Computes the hit rect and location of every drop target in DragLayer coordinates.
+     */
+    private void updateDropTargetGeometry() {
+        final ArrayList<DropTarget> dropTargets = mDropTargets;
+        final int count = dropTargets.size();
+        while (mDropTargetRects.size() < count) {
+            mDropTargetRects.add(new Rect());
+        }
+        if (mDropTargetLocations.length < 2 * count) {
+            mDropTargetLocations = new int[2 * count];
+        }
+        final int[] location = mLocationTemp;
+        for (int i = 0; i < count; i++) {
+            final DropTarget target = dropTargets.get(i);
+            final Rect r = mDropTargetRects.get(i);
+            target.getHitRect(r);
+            target.getLocationInDragLayer(location);
+
+            // Convert the hit rect to DragLayer coordinates
+            if (target instanceof AllAppsEater) {//modified by leeyb, support for garbage drag operation
+                mLauncher.getDragLayer().offsetDescendantRectToMyCoords2((View) target, r, false);
+            } else {
+                r.offset(location[0] - target.getLeft(), location[1] - target.getTop());
+            }
+            mDropTargetLocations[2 * i] = location[0];
+            mDropTargetLocations[2 * i + 1] = location[1];
+        }
+        mDropTargetGeometryValid = true;
+    }
+
+    /**
+     * Forgets the cached drop target geometry, for callers which move drop targets without a
+     * layout or a scroll, e.g. by animating their translation.
+     */
+    void invalidateDropTargetGeometry() {
+        mDropTargetGeometryValid = false;
+    }
+
+    private void observeDragLayer(boolean observe) {
+        if (mObservedTree != null) {
+            if (mObservedTree.isAlive()) {
+                mObservedTree.removeGlobalOnLayoutListener(mLayoutListener);
+                mObservedTree.removeOnScrollChangedListener(mScrollChangedListener);
+            }
+            mObservedTree = null;
+        }
+        if (observe) {
+            mObservedTree = mLauncher.getDragLayer().getViewTreeObserver();
+            mObservedTree.addOnGlobalLayoutListener(mLayoutListener);
+            mObservedTree.addOnScrollChangedListener(mScrollChangedListener);
+        }
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Drag: coalescedMoves=" + mCoalescedMoves
+                + " dropTargets=" + mDropTargets.size());
+    }
+
     public void setDragScoller(DragScroller scroller) {
         mDragScroller = scroller;
     }
@@ -683,6 +827,7 @@ public class DragController {
      */
     public void addDropTarget(DropTarget target) {
         mDropTargets.add(target);
+        mDropTargetGeometryValid = false;
     }
 
     public ArrayList<DropTarget> getDropTargets() {
@@ -698,6 +843,7 @@ public class DragController {
      */
     public void removeDropTarget(DropTarget target) {
         mDropTargets.remove(target);
+        mDropTargetGeometryValid = false;
     }
 
     /**
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import android.graphics.Bitmap;
+
+/**
+ * Drag images of the items the workspace moves out of the way while the user drags another one
+ * over them.
+ *
+ * Images are reused across drags, as long as the icon they were drawn from did not change. The
+ * cache holds at most {@link #MAX_ENTRIES} images, drops the least recently used ones past that,
+ * and does not keep items alive: entries go away with the item they belong to. The workspace
+ * empties it once the user leaves the home screen or memory gets low. Only accessed from the UI
+ * thread.
+ */
+class DragImageCache {
+    static final String TAG = "Launcher.DragImageCache";
+
+    private static final int MAX_ENTRIES = 12;
+
+    private static final class Entry {
+        Bitmap image;
+        /** What the image was drawn from, compared by identity to detect stale images. */
+        Object source;
+        long lastUse;
+    }
+
+    private final WeakHashMap<ItemInfo, Entry> mEntries = new WeakHashMap<ItemInfo, Entry>();
+    private long mUseCount;
+
+    // Counters reported by dump()
+    private int mHits;
+    private int mMisses;
+    private int mEvictions;
+
+    /**
+     * Returns the image of the item, or null if there is none or the item's content changed
+     * since it was drawn.
+     *
+     * @param source what the image would be drawn from now, e.g. the icon drawable.
+     */
+    Bitmap get(ItemInfo info, Object source) {
+        final Entry entry = mEntries.get(info);
+        if (entry == null || entry.source != source) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        entry.lastUse = ++mUseCount;
+        return entry.image;
+    }
+
+    void put(ItemInfo info, Object source, Bitmap image) {
+        Entry entry = mEntries.get(info);
+        if (entry == null) {
+            if (mEntries.size() >= MAX_ENTRIES) {
+                evictLeastRecentlyUsed();
+            }
+            entry = new Entry();
+            mEntries.put(info, entry);
+        }
+        entry.image = image;
+        entry.source = source;
+        entry.lastUse = ++mUseCount;
+    }
+
+    private void evictLeastRecentlyUsed() {
+        ItemInfo oldest = null;
+        long oldestUse = Long.MAX_VALUE;
+        for (Map.Entry<ItemInfo, Entry> e : mEntries.entrySet()) {
+            if (e.getValue().lastUse < oldestUse) {
+                oldestUse = e.getValue().lastUse;
+                oldest = e.getKey();
+            }
+        }
+        if (oldest != null) {
+            mEntries.remove(oldest);
+            mEvictions++;
+        }
+    }
+
+    /**
+     * Drops every image. Images still shown by a drag view stay valid, they are not recycled.
+     */
+    void clear() {
+        mEvictions += mEntries.size();
+        mEntries.clear();
+    }
+
+    int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Returns the memory held by the images, in bytes.
+     */
+    long getBytes() {
+        long bytes = 0;
+        for (Entry entry : mEntries.values()) {
+            bytes += entry.image.getRowBytes() * entry.image.getHeight();
+        }
+        return bytes;
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Drag image cache: entries=" + size()
+                + " size=" + (getBytes() / 1024) + "KB"
+                + " hits=" + mHits + " misses=" + mMisses + " evictions=" + mEvictions);
+    }
+}
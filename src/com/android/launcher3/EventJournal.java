@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded journal of model events, printed by Launcher.dump().
+ *
+ * The journal keeps the last {@link #CAPACITY} events and overwrites the oldest ones, so its
+ * memory does not grow on long-running devices. Appending never blocks: writers claim a slot
+ * with an atomic counter and publish it by stamping the slot with its sequence number, which
+ * dumps check to skip the slots being rewritten.
+ */
+class EventJournal {
+    static final String TAG = "Launcher.EventJournal";
+
+    /** Event types, which can be combined to filter dumps. */
+    static final int TYPE_LOAD = 1 << 0;
+    static final int TYPE_BIND = 1 << 1;
+    static final int TYPE_DELETE = 1 << 2;
+    static final int TYPE_PACKAGE = 1 << 3;
+    static final int TYPE_DB_REPAIR = 1 << 4;
+    static final int TYPE_ALL = (1 << 5) - 1;
+    private static final String[] TYPE_NAMES = { "load", "bind", "delete", "package", "repair" };
+
+    private static final int CAPACITY = 256; // Must be a power of two
+
+    private static final AtomicLong sNextSequence = new AtomicLong();
+    // Sequence number + 1 of the event in each slot, 0 while the slot is being written
+    private static final AtomicLongArray sStamps = new AtomicLongArray(CAPACITY);
+    private static final long[] sTimes = new long[CAPACITY];
+    private static final int[] sTypes = new int[CAPACITY];
+    private static final String[] sMessages = new String[CAPACITY];
+
+    private EventJournal() {
+    }
+
+    /**
+     * Appends an event, from any thread.
+     */
+    static void add(int type, String message) {
+        final long sequence = sNextSequence.getAndIncrement();
+        final int slot = (int) (sequence & (CAPACITY - 1));
+        sStamps.set(slot, 0);
+        sTimes[slot] = System.currentTimeMillis();
+        sTypes[slot] = type;
+        sMessages[slot] = message;
+        sStamps.set(slot, sequence + 1);
+    }
+
+    /**
+     * Parses dump arguments naming event types, such as "delete" or "package".
+     *
+     * @return the matching types, or {@link #TYPE_ALL} if no argument names a type.
+     */
+    static int parseTypes(String[] args) {
+        int types = 0;
+        if (args != null) {
+            for (String arg : args) {
+                for (int i = 0; i < TYPE_NAMES.length; i++) {
+                    if (TYPE_NAMES[i].equals(arg)) {
+                        types |= 1 << i;
+                    }
+                }
+            }
+        }
+        return types != 0 ? types : TYPE_ALL;
+    }
+
+    /**
+     * Prints the events of the given types, oldest first.
+     */
+    static void dump(String prefix, PrintWriter writer, int types) {
+        final long end = sNextSequence.get();
+        final long start = Math.max(0, end - CAPACITY);
+        final SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss.SSS");
+        final Date date = new Date();
+        writer.println(prefix + "Event journal: " + (end - start) + " of " + end + " events");
+        for (long sequence = start; sequence < end; sequence++) {
+            final int slot = (int) (sequence & (CAPACITY - 1));
+            if (sStamps.get(slot) != sequence + 1) {
+                continue;
+            }
+            final long time = sTimes[slot];
+            final int type = sTypes[slot];
+            final String message = sMessages[slot];
+            // Skip the event if a writer took its slot while it was read
+            if (sStamps.get(slot) != sequence + 1 || (type & types) == 0) {
+                continue;
+            }
+            date.setTime(time);
+            writer.println(prefix + "  " + format.format(date) + " "
+                    + TYPE_NAMES[Integer.numberOfTrailingZeros(type)] + ": " + message);
+        }
+    }
+}
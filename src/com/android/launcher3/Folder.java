@@ -90,6 +90,10 @@ public class Folder extends LinearLayout implements DragSource, View.OnClickList
     private ArrayList<View> mItemsInReadingOrder = new ArrayList<View>();
     private Drawable mIconDrawable;
     boolean mItemsInvalidated = false;
+    // Scratch state of realTimeReorder(), destination cells are { cellX, cellY, delay }
+    private final ArrayList<View> mReorderChildren = new ArrayList<View>();
+    private final ArrayList<int[]> mReorderCells = new ArrayList<int[]>();
+    private int[] mReorderDelays = new int[0];
     private ShortcutInfo mCurrentDragInfo;
     private View mCurrentDragView;
     boolean mSuppressOnAdd = false;
@@ -341,7 +345,7 @@ public class Folder extends LinearLayout implements DragSource, View.OnClickList
             LauncherModel.deleteItemFromDatabase(mLauncher, item);
         }
 
-        mItemsInvalidated = true;
+        invalidateItems();
         updateTextViewFocus();
         mInfo.addListener(this);
 
@@ -589,23 +593,24 @@ public class Folder extends LinearLayout implements DragSource, View.OnClickList
         }
     }
 
+    /**
+     * Shifts every item between the empty cell and the target cell by one cell in reading order,
+     * towards the empty cell. The whole permutation is computed first, then the displaced items
+     * are animated together, each one starting a little after the previous one.
+     */
     private void realTimeReorder(int[] empty, int[] target) {
-        boolean wrap;
-        int startX;
-        int endX;
-        int startY;
+        final ArrayList<View> children = mReorderChildren;
+        final ArrayList<int[]> cells = mReorderCells;
         int delay = 0;
         float delayAmount = 30;
         if (readingOrderGreaterThan(target, empty)) {
-            wrap = empty[0] >= mContent.getCountX() - 1;
-            startY = wrap ? empty[1] + 1 : empty[1];
+            final boolean wrap = empty[0] >= mContent.getCountX() - 1;
+            final int startY = wrap ? empty[1] + 1 : empty[1];
             for (int y = startY; y <= target[1]; y++) {
-                startX = y == empty[1] ? empty[0] + 1 : 0;
-                endX = y < target[1] ? mContent.getCountX() - 1 : target[0];
+                final int startX = y == empty[1] ? empty[0] + 1 : 0;
+                final int endX = y < target[1] ? mContent.getCountX() - 1 : target[0];
                 for (int x = startX; x <= endX; x++) {
-                    View v = mContent.getChildAt(x,y);
-                    if (mContent.animateChildToPosition(v, empty[0], empty[1],
-                            REORDER_ANIMATION_DURATION, delay)) {
+                    if (addReorderStep(mContent.getChildAt(x, y), empty, delay)) {
                         empty[0] = x;
                         empty[1] = y;
                         delay += delayAmount;
@@ -614,15 +619,13 @@ public class Folder extends LinearLayout implements DragSource, View.OnClickList
                 }
             }
         } else {
-            wrap = empty[0] == 0;
-            startY = wrap ? empty[1] - 1 : empty[1];
+            final boolean wrap = empty[0] == 0;
+            final int startY = wrap ? empty[1] - 1 : empty[1];
             for (int y = startY; y >= target[1]; y--) {
-                startX = y == empty[1] ? empty[0] - 1 : mContent.getCountX() - 1;
-                endX = y > target[1] ? 0 : target[0];
+                final int startX = y == empty[1] ? empty[0] - 1 : mContent.getCountX() - 1;
+                final int endX = y > target[1] ? 0 : target[0];
                 for (int x = startX; x >= endX; x--) {
-                    View v = mContent.getChildAt(x,y);
-                    if (mContent.animateChildToPosition(v, empty[0], empty[1],
-                            REORDER_ANIMATION_DURATION, delay)) {
+                    if (addReorderStep(mContent.getChildAt(x, y), empty, delay)) {
                         empty[0] = x;
                         empty[1] = y;
                         delay += delayAmount;
@@ -631,6 +634,34 @@ public class Folder extends LinearLayout implements DragSource, View.OnClickList
                 }
             }
         }
+
+        final int count = children.size();
+        if (mReorderDelays.length < count) {
+            mReorderDelays = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            mReorderDelays[i] = cells.get(i)[2];
+        }
+        if (!mContent.animateChildrenToPositions(children, cells, REORDER_ANIMATION_DURATION,
+                mReorderDelays)) {
+            Log.w(TAG, "realTimeReorder: unable to move " + count + " items of " + mInfo.title);
+        }
+        children.clear();
+        cells.clear();
+    }
+
+    /**
+     * Records that the child moves to the given cell, after the given delay.
+     *
+     * @return false if there is no child to move.
+     */
+    private boolean addReorderStep(View child, int[] cell, int delay) {
+        if (child == null) {
+            return false;
+        }
+        mReorderChildren.add(child);
+        mReorderCells.add(new int[] { cell[0], cell[1], delay });
+        return true;
     }
 
     public void onDragOver(DragObject d) {
@@ -734,12 +765,11 @@ public class Folder extends LinearLayout implements DragSource, View.OnClickList
 
     private void updateItemLocationsInDatabase() {
         ArrayList<View> list = getItemsInReadingOrder();
+        ArrayList<ItemInfo> items = new ArrayList<ItemInfo>(list.size());
         for (int i = 0; i < list.size(); i++) {
-            View v = list.get(i);
-            ItemInfo info = (ItemInfo) v.getTag();
-            LauncherModel.moveItemInDatabase(mLauncher, info, mInfo.id, 0,
-                        info.cellX, info.cellY);
+            items.add((ItemInfo) list.get(i).getTag());
         }
+        LauncherModel.moveItemsInDatabase(mLauncher, items, mInfo.id, 0);
     }
 
     public void notifyDrop() {
@@ -789,6 +819,28 @@ public class Folder extends LinearLayout implements DragSource, View.OnClickList
         return getItemCount() >= mMaxNumItems;
     }
 
+    /**
+     * Returns the maximum number of items a folder can hold, for folders which have not been
+     * inflated yet.
+     */
+    static int getMaxNumItems(Resources res) {
+        int maxCountX = res.getInteger(R.integer.folder_max_count_x);
+        int maxCountY = res.getInteger(R.integer.folder_max_count_y);
+        int maxNumItems = res.getInteger(R.integer.folder_max_num_items);
+        if (maxCountX < 0 || maxCountY < 0 || maxNumItems < 0) {
+            maxNumItems = LauncherModel.getCellCountX() * LauncherModel.getCellCountY();
+        }
+        return maxNumItems;
+    }
+
+    /**
+     * Whether the folder is shown or one of its items is being dragged, in which case its
+     * views must be kept.
+     */
+    boolean isInUse() {
+        return getParent() != null || mDragInProgress || mState == STATE_ANIMATING;
+    }
+
     private void centerAboutIcon() {
         DragLayer.LayoutParams lp = (DragLayer.LayoutParams) getLayoutParams();
 
@@ -898,7 +950,7 @@ public class Folder extends LinearLayout implements DragSource, View.OnClickList
             boolean insert = false;
             mContent.addViewToCellLayout(v, insert ? 0 : -1, (int)info.id, lp, true);
         }
-        mItemsInvalidated = true;
+        invalidateItems();
     }
 
     public int getItemCount() {
@@ -999,7 +1051,7 @@ public class Folder extends LinearLayout implements DragSource, View.OnClickList
             } else {
                 mCurrentDragView.setVisibility(VISIBLE);
             }
-            mItemsInvalidated = true;
+            invalidateItems();
             setupContentDimensions(getItemCount());
             mSuppressOnAdd = true;
         }
@@ -1007,7 +1059,7 @@ public class Folder extends LinearLayout implements DragSource, View.OnClickList
     }
 
     public void onAdd(ShortcutInfo item) {
-        mItemsInvalidated = true;
+        invalidateItems();
         // If the item was dropped onto this open folder, we have done the work associated
         // with adding the item to the folder, as indicated by mSuppressOnAdd being set
         if (mSuppressOnAdd) return;
@@ -1022,7 +1074,7 @@ public class Folder extends LinearLayout implements DragSource, View.OnClickList
     }
 
     public void onRemove(ShortcutInfo item) {
-        mItemsInvalidated = true;
+        invalidateItems();
         // If this item is being dragged from this open folder, we have already handled
         // the work associated with removing the item, so we don't have to do anything here.
         if (item == mCurrentDragInfo) return;
@@ -1057,6 +1109,16 @@ public class Folder extends LinearLayout implements DragSource, View.OnClickList
     public void onTitleChanged(CharSequence title) {
     }
 
+    /**
+     * Marks the reading order stale, along with the preview the folder icon draws from it.
+     */
+    private void invalidateItems() {
+        mItemsInvalidated = true;
+        if (mFolderIcon != null) {
+            mFolderIcon.invalidatePreview();
+        }
+    }
+
     public ArrayList<View> getItemsInReadingOrder() {
         return getItemsInReadingOrder(true);
     }
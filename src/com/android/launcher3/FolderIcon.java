@@ -22,10 +22,13 @@ import android.animation.ValueAnimator;
 import android.animation.ValueAnimator.AnimatorUpdateListener;
 import android.content.Context;
 import android.content.res.Resources;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -41,13 +44,17 @@ import com.android.launcher3.DropTarget.DragObject;
 import com.android.launcher3.FolderInfo.FolderListener;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 
 /**
  * An icon that can appear on in the workspace representing an {@link UserFolder}.
  */
 public class FolderIcon extends LinearLayout implements FolderListener {
     private Launcher mLauncher;
-    Folder mFolder;
+    private IconCache mIconCache;
+    // Inflated on demand by getFolder(), most folders are never opened
+    private Folder mFolder;
     FolderInfo mInfo;
     private static boolean sStaticValuesDirty = true;
     static final String TAG = "Launcher.FolderIcon";
@@ -93,6 +100,23 @@ public class FolderIcon extends LinearLayout implements FolderListener {
     private PreviewItemDrawingParams mAnimParams = new PreviewItemDrawingParams(0, 0, 0);
     private float mGap;
 
+    // The preview items are rendered once into this bitmap, and redrawn only when the contents
+    // of the folder or the size of the icon change, rather than on every frame
+    private Bitmap mPreviewBitmap;
+    private final Canvas mPreviewCanvas = new Canvas();
+    private boolean mPreviewDirty = true;
+    private final ArrayList<Drawable> mPreviewDrawables = new ArrayList<Drawable>();
+    private final ArrayList<ShortcutInfo> mPreviewContents = new ArrayList<ShortcutInfo>();
+
+    private static final Comparator<ShortcutInfo> READING_ORDER = new Comparator<ShortcutInfo>() {
+        public int compare(ShortcutInfo a, ShortcutInfo b) {
+            if (a.cellY != b.cellY) {
+                return a.cellY < b.cellY ? -1 : 1;
+            }
+            return a.cellX < b.cellX ? -1 : (a.cellX == b.cellX ? 0 : 1);
+        }
+    };
+
     public FolderIcon(Context context, AttributeSet attrs) {
         super(context, attrs);
     }
@@ -127,13 +151,9 @@ public class FolderIcon extends LinearLayout implements FolderListener {
         icon.setOnClickListener(launcher);
         icon.mInfo = folderInfo;
         icon.mLauncher = launcher;
+        icon.mIconCache = iconCache;
         icon.setContentDescription(String.format(launcher.getString(R.string.folder_name_format),
                 folderInfo.title));
-        Folder folder = Folder.fromXml(launcher);
-        folder.setDragController(launcher.getDragController());
-        folder.setFolderIcon(icon);
-        folder.bind(folderInfo);
-        icon.mFolder = folder;
 
         icon.mFolderRingAnimator = new FolderRingAnimator(launcher, icon);
         folderInfo.addListener(icon);
@@ -141,6 +161,46 @@ public class FolderIcon extends LinearLayout implements FolderListener {
         return icon;
     }
 
+    /**
+     * Returns the folder view, inflating it and its items the first time it is needed.
+     */
+    Folder getFolder() {
+        if (mFolder == null) {
+            final long start = SystemClock.uptimeMillis();
+            Folder folder = Folder.fromXml(mLauncher);
+            folder.setDragController(mLauncher.getDragController());
+            folder.setFolderIcon(this);
+            folder.bind(mInfo);
+            mFolder = folder;
+            invalidatePreview();
+            if (LauncherLog.DEBUG) {
+                LauncherLog.d(TAG, "getFolder: inflated " + mInfo.contents.size() + " items of "
+                        + mInfo.title + " in " + (SystemClock.uptimeMillis() - start) + "ms");
+            }
+        }
+        return mFolder;
+    }
+
+    /**
+     * Drops the folder view if it is not open nor part of a drag, the icon then previews the
+     * contents of {@link #mInfo} directly until the folder is needed again.
+     *
+     * @return true if the folder was released.
+     */
+    boolean releaseFolder() {
+        if (mFolder == null || mInfo.opened || mFolder.isInUse()) {
+            return false;
+        }
+        mInfo.removeListener(mFolder);
+        mFolder = null;
+        invalidatePreview();
+        return true;
+    }
+
+    private int getItemCount() {
+        return mFolder != null ? mFolder.getItemCount() : mInfo.contents.size();
+    }
+
     @Override
     protected Parcelable onSaveInstanceState() {
         sStaticValuesDirty = true;
@@ -280,7 +340,12 @@ public class FolderIcon extends LinearLayout implements FolderListener {
         final int itemType = item.itemType;
         return ((itemType == LauncherSettings.Favorites.ITEM_TYPE_APPLICATION ||
                 itemType == LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT) &&
-                !mFolder.isFull() && item != mInfo && !mInfo.opened);
+                !isFull() && item != mInfo && !mInfo.opened);
+    }
+
+    private boolean isFull() {
+        return mFolder != null ? mFolder.isFull()
+                : mInfo.contents.size() >= Folder.getMaxNumItems(getResources());
     }
 
     public boolean acceptDrop(Object dragInfo) {
@@ -289,6 +354,8 @@ public class FolderIcon extends LinearLayout implements FolderListener {
     }
 
     public void addItem(ShortcutInfo item) {
+        // The folder places the new item in its grid, so it has to exist beforehand
+        getFolder();
         mInfo.add(item);
         LauncherModel.addOrMoveItemInDatabase(mLauncher, item, mInfo.id, 0, item.cellX, item.cellY);
     }
@@ -400,7 +467,9 @@ public class FolderIcon extends LinearLayout implements FolderListener {
         } else {
             item = (ShortcutInfo) d.dragInfo;
         }
-        mFolder.notifyDrop();
+        if (mFolder != null) {
+            mFolder.notifyDrop();
+        }
         onDrop(item, d.dragView, null, 1.0f, mInfo.contents.size(), d.postAnimationRunnable);
     }
 
@@ -513,35 +582,125 @@ public class FolderIcon extends LinearLayout implements FolderListener {
     protected void dispatchDraw(Canvas canvas) {
         super.dispatchDraw(canvas);
 
-        if (mFolder == null) return;
-        if (mFolder.getItemCount() == 0 && !mAnimating) return;
-
-        ArrayList<View> items = mFolder.getItemsInReadingOrder(false);
-        Drawable d;
-        TextView v;
+        if (mInfo == null) return;
+        if (getItemCount() == 0 && !mAnimating) return;
 
-        // Update our drawing parameters if necessary
+        // The first item animates in on its own, draw it live
         if (mAnimating) {
             computePreviewDrawingParams(mAnimParams.drawable);
-        } else {
-            v = (TextView) items.get(0);
-            d = v.getCompoundDrawables()[1];
-            computePreviewDrawingParams(d);
+            drawPreviewItem(canvas, mAnimParams);
+            return;
         }
 
-        int nItemsInPreview = Math.min(items.size(), NUM_ITEMS_IN_PREVIEW_HON * NUM_ITEMS_IN_PREVIEW_VER);
-        if (!mAnimating) {
-            for (int i = nItemsInPreview - 1; i >= 0; i--) {
-                v = (TextView) items.get(i);
-                d = v.getCompoundDrawables()[1];
+        if (mPreviewDirty || mPreviewBitmap == null || mPreviewBitmap.getWidth() != getWidth()
+                || mPreviewBitmap.getHeight() != getHeight()) {
+            if (!updatePreviewBitmap()) {
+                drawPreviewItems(canvas);
+                return;
+            }
+        }
+        canvas.drawBitmap(mPreviewBitmap, 0, 0, null);
+    }
+
+    private void drawPreviewItems(Canvas canvas) {
+        ArrayList<Drawable> drawables = getPreviewDrawables();
+        if (drawables.isEmpty()) return;
+
+        // Update our drawing parameters if necessary
+        computePreviewDrawingParams(drawables.get(0));
 
-                mParams = computePreviewItemDrawingParams(i, mParams);
-                mParams.drawable = d;
-                drawPreviewItem(canvas, mParams);
+        for (int i = drawables.size() - 1; i >= 0; i--) {
+            mParams = computePreviewItemDrawingParams(i, mParams);
+            mParams.drawable = drawables.get(i);
+            drawPreviewItem(canvas, mParams);
+        }
+        drawables.clear();
+    }
+
+    /**
+     * Returns the icons of the first items in reading order, taken from the folder's views if
+     * it has been inflated and from the folder contents otherwise.
+     */
+    private ArrayList<Drawable> getPreviewDrawables() {
+        final int maxItems = NUM_ITEMS_IN_PREVIEW_HON * NUM_ITEMS_IN_PREVIEW_VER;
+        mPreviewDrawables.clear();
+        if (mFolder != null) {
+            ArrayList<View> items = mFolder.getItemsInReadingOrder(false);
+            int nItemsInPreview = Math.min(items.size(), maxItems);
+            for (int i = 0; i < nItemsInPreview; i++) {
+                mPreviewDrawables.add(((TextView) items.get(i)).getCompoundDrawables()[1]);
             }
         } else {
-            drawPreviewItem(canvas, mAnimParams);
+            mPreviewContents.addAll(mInfo.contents);
+            Collections.sort(mPreviewContents, READING_ORDER);
+            int nItemsInPreview = Math.min(mPreviewContents.size(), maxItems);
+            for (int i = 0; i < nItemsInPreview; i++) {
+                mPreviewDrawables.add(new FastBitmapDrawable(
+                        mPreviewContents.get(i).getIcon(mIconCache)));
+            }
+            mPreviewContents.clear();
+        }
+        return mPreviewDrawables;
+    }
+
+    /**
+     * Renders the preview items into {@link #mPreviewBitmap}, reallocating it if the icon was
+     * resized.
+     *
+     * @return false if the icon has not been laid out yet or the bitmap could not be allocated.
+     */
+    private boolean updatePreviewBitmap() {
+        final int width = getWidth();
+        final int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+        if (mPreviewBitmap == null || mPreviewBitmap.getWidth() != width
+                || mPreviewBitmap.getHeight() != height) {
+            try {
+                mPreviewBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            } catch (OutOfMemoryError e) {
+                LauncherLog.w(TAG, "Unable to allocate the preview of folder " + mInfo.title, e);
+                mPreviewBitmap = null;
+                return false;
+            }
+            mPreviewCanvas.setBitmap(mPreviewBitmap);
+        } else {
+            mPreviewBitmap.eraseColor(Color.TRANSPARENT);
         }
+        drawPreviewItems(mPreviewCanvas);
+        mPreviewDirty = false;
+        return true;
+    }
+
+    /**
+     * Redraws the preview on the next frame, called whenever the items shown in it may have
+     * changed.
+     */
+    void invalidatePreview() {
+        mPreviewDirty = true;
+        invalidate();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // Rebuilt on the next draw if the icon is attached again
+        releasePreview();
+    }
+
+    /**
+     * Drops the cached preview bitmap, which is rebuilt on the next draw.
+     */
+    void releasePreview() {
+        mPreviewCanvas.setBitmap(null);
+        mPreviewBitmap = null;
+        mPreviewDirty = true;
+    }
+
+    int getPreviewBytes() {
+        return mPreviewBitmap != null
+                ? mPreviewBitmap.getRowBytes() * mPreviewBitmap.getHeight() : 0;
     }
 
     private void animateFirstItem(final Drawable d, int duration) {
@@ -572,6 +731,7 @@ public class FolderIcon extends LinearLayout implements FolderListener {
             @Override
             public void onAnimationEnd(Animator animation) {
                 mAnimating = false;
+                invalidatePreview();
             }
         });
         va.setDuration(duration);
@@ -591,17 +751,17 @@ public class FolderIcon extends LinearLayout implements FolderListener {
     }
 
     public void onItemsChanged() {
-        invalidate();
+        invalidatePreview();
         requestLayout();
     }
 
     public void onAdd(ShortcutInfo item) {
-        invalidate();
+        invalidatePreview();
         requestLayout();
     }
 
     public void onRemove(ShortcutInfo item) {
-        invalidate();
+        invalidatePreview();
         requestLayout();
     }
 
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Frame time and jank histograms for scrolling and state transitions.
+ *
+ * Recording is two System.nanoTime() calls and an array increment, with no allocation, so the
+ * stats are always on. Instances are shared by name, which lets a recreated Workspace keep
+ * adding to the same histograms, and are printed by Launcher.dump().
+ */
+final class FrameStats {
+    static final String TAG = "Launcher.FrameStats";
+
+    /** Time between two consecutive frames of a running scroll or animation. */
+    static final int FRAME_INTERVAL = 0;
+    static final int DISPATCH_DRAW = 1;
+    static final int SCREEN_SCROLLED = 2;
+    static final int COMPUTE_SCROLL = 3;
+    static final int SHOW_APPS_CUSTOMIZE = 4;
+    static final int HIDE_APPS_CUSTOMIZE = 5;
+    static final int CHANGE_STATE = 6;
+    /** One drag-over pass: hit testing plus the drop target's onDragOver(). */
+    static final int DRAG_MOVE = 7;
+    private static final String[] SECTION_NAMES = {
+        "frameInterval", "dispatchDraw", "screenScrolled", "computeScroll",
+        "showAppsCustomize", "hideAppsCustomize", "changeState", "dragMove"
+    };
+    private static final int SECTION_COUNT = SECTION_NAMES.length;
+
+    /** Bucket upper bounds in microseconds; the last bucket takes everything above. */
+    private static final int[] BUCKET_BOUNDS_US = {
+        250, 500, 1000, 2000, 3000, 4000, 5000, 6000, 8000, 10000, 12000, 14000, 16700,
+        20000, 25000, 33400, 50000, 66800, 100000, 200000, 500000, Integer.MAX_VALUE
+    };
+    private static final int BUCKET_COUNT = BUCKET_BOUNDS_US.length;
+
+    private static final long FRAME_NS = 16666667L;
+    /** Frames further apart than this are a stall, e.g. a scroll held still, not jank. */
+    private static final long MAX_FRAME_GAP_NS = 250000000L;
+
+    /** Set to false to turn every recording call into a no-op. */
+    static volatile boolean sEnabled = true;
+
+    private static final ArrayList<FrameStats> sAllStats = new ArrayList<FrameStats>();
+
+    private final String mName;
+    private final int[][] mHistograms = new int[SECTION_COUNT][BUCKET_COUNT];
+    private final long[] mTotalNs = new long[SECTION_COUNT];
+    private final long[] mMaxNs = new long[SECTION_COUNT];
+    private long mLastFrameNs;
+    private int mFrames;
+    private int mDroppedFrames;
+
+    private FrameStats(String name) {
+        mName = name;
+    }
+
+    /**
+     * Returns the stats registered under the given name, creating them on first use.
+     */
+    static FrameStats get(String name) {
+        synchronized (sAllStats) {
+            for (int i = 0; i < sAllStats.size(); i++) {
+                final FrameStats stats = sAllStats.get(i);
+                if (stats.mName.equals(name)) {
+                    return stats;
+                }
+            }
+            final FrameStats stats = new FrameStats(name);
+            sAllStats.add(stats);
+            return stats;
+        }
+    }
+
+    /**
+     * Returns a start time to hand to {@link #end(int, long)}, or 0 when disabled.
+     */
+    static long begin() {
+        return sEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time spent in a section started with {@link #begin()}.
+     */
+    void end(int section, long startNs) {
+        if (startNs == 0) {
+            return;
+        }
+        record(section, System.nanoTime() - startNs);
+    }
+
+    /**
+     * Marks the start of a frame. Only frames drawn while a scroll, fling or state transition
+     * runs are timed: the first frame of such a run starts the clock, and for each following
+     * one the interval is recorded and each missed vsync counts as a dropped frame. Frames drawn
+     * while nothing moves are idle redraws and are not counted.
+     *
+     * @param nowNs the frame time, as returned by {@link #begin()}.
+     * @param animating whether the view is scrolling or animating on this frame.
+     */
+    void onFrame(long nowNs, boolean animating) {
+        if (nowNs == 0 || !animating) {
+            mLastFrameNs = 0;
+            return;
+        }
+        final long lastFrameNs = mLastFrameNs;
+        mLastFrameNs = nowNs;
+        final long interval = nowNs - lastFrameNs;
+        if (lastFrameNs == 0 || interval <= 0 || interval > MAX_FRAME_GAP_NS) {
+            return;
+        }
+        mFrames++;
+        // Half a frame of slack for vsync jitter
+        final int missed = (int) ((interval + FRAME_NS / 2) / FRAME_NS) - 1;
+        if (missed > 0) {
+            mDroppedFrames += missed;
+        }
+        record(FRAME_INTERVAL, interval);
+    }
+
+    private void record(int section, long ns) {
+        final long us = ns / 1000;
+        int bucket = 0;
+        while (bucket < BUCKET_COUNT - 1 && us > BUCKET_BOUNDS_US[bucket]) {
+            bucket++;
+        }
+        mHistograms[section][bucket]++;
+        mTotalNs[section] += ns;
+        if (ns > mMaxNs[section]) {
+            mMaxNs[section] = ns;
+        }
+    }
+
+    /**
+     * Returns the upper bound, in microseconds, of the bucket holding the given percentile.
+     */
+    private int percentileUs(int section, int percentile) {
+        final int[] histogram = mHistograms[section];
+        int total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += histogram[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final int target = (int) Math.ceil(total * percentile / 100.0);
+        int seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += histogram[i];
+            if (seen >= target) {
+                return i < BUCKET_COUNT - 1 ? BUCKET_BOUNDS_US[i]
+                        : (int) Math.min(Integer.MAX_VALUE, mMaxNs[section] / 1000);
+            }
+        }
+        return 0;
+    }
+
+    void reset() {
+        for (int i = 0; i < SECTION_COUNT; i++) {
+            Arrays.fill(mHistograms[i], 0);
+            mTotalNs[i] = 0;
+            mMaxNs[i] = 0;
+        }
+        mLastFrameNs = 0;
+        mFrames = 0;
+        mDroppedFrames = 0;
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + mName + ": frames=" + mFrames + " dropped=" + mDroppedFrames);
+        for (int section = 0; section < SECTION_COUNT; section++) {
+            int count = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                count += mHistograms[section][i];
+            }
+            if (count == 0) {
+                continue;
+            }
+            writer.println(prefix + "  " + SECTION_NAMES[section] + ": n=" + count
+                    + " avg=" + (mTotalNs[section] / count / 1000) + "us"
+                    + " p50<=" + percentileUs(section, 50) + "us"
+                    + " p90<=" + percentileUs(section, 90) + "us"
+                    + " p99<=" + percentileUs(section, 99) + "us"
+                    + " max=" + (mMaxNs[section] / 1000) + "us");
+        }
+    }
+
+    static void dumpAll(String prefix, PrintWriter writer) {
+        synchronized (sAllStats) {
+            for (int i = 0; i < sAllStats.size(); i++) {
+                sAllStats.get(i).dump(prefix, writer);
+            }
+        }
+    }
+}
@@ -24,6 +24,15 @@ import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.TableMaskFilter;
+import android.graphics.drawable.Drawable;
+import android.os.SystemProperties;
+import android.view.View;
+import android.widget.TextView;
+
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class HolographicOutlineHelper {
     private final Paint mHolographicPaint = new Paint();
@@ -42,9 +51,89 @@ public class HolographicOutlineHelper {
     private static final BlurMaskFilter sExtraThickInnerBlurMaskFilter;
     private static final BlurMaskFilter sMediumInnerBlurMaskFilter;
 
-    private static final int THICK = 0;
-    private static final int MEDIUM = 1;
-    private static final int EXTRA_THICK = 2;
+    // Radii of the filters above, for the pure Java backend
+    private static final float sExtraThickOuterRadius;
+    private static final float sThickOuterRadius;
+    private static final float sMediumOuterRadius;
+    private static final float sThinOuterRadius;
+    private static final float sExtraThickInnerRadius;
+    private static final float sThickInnerRadius;
+    private static final float sMediumInnerRadius;
+
+    /**
+     * Computes expensive outlines with {@link AlphaBlur} instead of BlurMaskFilter. The result
+     * is an approximation of the framework output, for devices or tests where the software
+     * mask filters are slow or unavailable. Selected with the debug.launcher3.javablur property,
+     * read once when the class loads.
+     */
+    static final boolean sUseJavaBlur;
+
+    /** Alpha clip of mAlphaClipPaint, which the Java backend applies itself. */
+    private static final int ALPHA_CLIP_MIN = 180;
+    private static final int ALPHA_CLIP_MAX = 255;
+
+    static final int THICK = 0;
+    static final int MEDIUM = 1;
+    static final int EXTRA_THICK = 2;
+
+    /** Upper bound of the memory held by cached outlines. */
+    private static final int OUTLINE_CACHE_MAX_BYTES = 2 * 1024 * 1024;
+
+    /**
+     * Outlines already computed, most recently used last. Shared by all helpers; only
+     * accessed from the UI thread.
+     */
+    private static final LinkedHashMap<OutlineKey, Bitmap> sOutlineCache =
+            new LinkedHashMap<OutlineKey, Bitmap>(16, 0.75f, true);
+    private static int sOutlineCacheBytes;
+    private static int sOutlineCacheHits;
+    private static int sOutlineCacheMisses;
+    private static final OutlineKey sLookupKey = new OutlineKey();
+
+    /**
+     * Identifies an outline by what it was drawn from, compared by identity, plus its size,
+     * thickness and colors.
+     */
+    private static final class OutlineKey {
+        Object content;
+        int width;
+        int height;
+        int thickness;
+        int color;
+        int outlineColor;
+
+        OutlineKey set(Object content, int width, int height, int thickness, int color,
+                int outlineColor) {
+            this.content = content;
+            this.width = width;
+            this.height = height;
+            this.thickness = thickness;
+            this.color = color;
+            this.outlineColor = outlineColor;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof OutlineKey)) {
+                return false;
+            }
+            final OutlineKey k = (OutlineKey) o;
+            return content == k.content && width == k.width && height == k.height
+                    && thickness == k.thickness && color == k.color
+                    && outlineColor == k.outlineColor;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = System.identityHashCode(content);
+            h = 31 * h + width;
+            h = 31 * h + height;
+            h = 31 * h + thickness;
+            h = 31 * h + color;
+            return 31 * h + outlineColor;
+        }
+    }
 
     static {
         final float scale = LauncherApplication.getScreenDensity();
@@ -59,11 +148,33 @@ public class HolographicOutlineHelper {
         sExtraThickInnerBlurMaskFilter = new BlurMaskFilter(scale * 6.0f, BlurMaskFilter.Blur.NORMAL);
         sThickInnerBlurMaskFilter = new BlurMaskFilter(scale * 4.0f, BlurMaskFilter.Blur.NORMAL);
         sMediumInnerBlurMaskFilter = new BlurMaskFilter(scale * 2.0f, BlurMaskFilter.Blur.NORMAL);
+
+        sExtraThickOuterRadius = scale * 12.0f;
+        sThickOuterRadius = scale * 6.0f;
+        sMediumOuterRadius = scale * 2.0f;
+        sThinOuterRadius = scale * 1.0f;
+        sExtraThickInnerRadius = scale * 6.0f;
+        sThickInnerRadius = scale * 4.0f;
+        sMediumInnerRadius = scale * 2.0f;
+
+        sUseJavaBlur = SystemProperties.getBoolean("debug.launcher3.javablur", false);
     }
 
     private static final MaskFilter sCoarseClipTable = TableMaskFilter.CreateClipTable(0, 200);
 
     private int[] mTempOffset = new int[2];
+    // Scratch offsets of the intermediate blurs of applyExpensiveOutlineWithBlur()
+    private final int[] mOuterBlurOffset = new int[2];
+    private final int[] mBrightOutlineOffset = new int[2];
+    private final int[] mInnerBlurOffset = new int[2];
+
+    // Scratch buffers of the Java backend, grown as needed
+    private AlphaBlur mJavaBlur;
+    private int[] mPixels = new int[0];
+    private int[] mShape = new int[0];
+    private int[] mOuter = new int[0];
+    private int[] mBright = new int[0];
+    private int[] mInner = new int[0];
 
     HolographicOutlineHelper() {
         mHolographicPaint.setFilterBitmap(true);
@@ -133,6 +244,10 @@ public class HolographicOutlineHelper {
         if (alphaClipPaint == null) {
             alphaClipPaint = mAlphaClipPaint;
         }
+        if (sUseJavaBlur && alphaClipPaint == mAlphaClipPaint) {
+            applyExpensiveOutlineWithJavaBlur(srcDst, color, outlineColor, thickness);
+            return;
+        }
         Bitmap glowShape = srcDst.extractAlpha(alphaClipPaint, mTempOffset);
 
         // calculate the outer blur first
@@ -151,7 +266,7 @@ public class HolographicOutlineHelper {
                 throw new RuntimeException("Invalid blur thickness");
         }
         mBlurPaint.setMaskFilter(outerBlurMaskFilter);
-        int[] outerBlurOffset = new int[2];
+        final int[] outerBlurOffset = mOuterBlurOffset;
         Bitmap thickOuterBlur = glowShape.extractAlpha(mBlurPaint, outerBlurOffset);
         if (thickness == EXTRA_THICK) {
             mBlurPaint.setMaskFilter(sMediumOuterBlurMaskFilter);
@@ -159,7 +274,7 @@ public class HolographicOutlineHelper {
             mBlurPaint.setMaskFilter(sThinOuterBlurMaskFilter);
         }
 
-        int[] brightOutlineOffset = new int[2];
+        final int[] brightOutlineOffset = mBrightOutlineOffset;
         Bitmap brightOutline = glowShape.extractAlpha(mBlurPaint, brightOutlineOffset);
 
         // calculate the inner blur
@@ -180,7 +295,7 @@ public class HolographicOutlineHelper {
                 throw new RuntimeException("Invalid blur thickness");
         }
         mBlurPaint.setMaskFilter(innerBlurMaskFilter);
-        int[] thickInnerBlurOffset = new int[2];
+        final int[] thickInnerBlurOffset = mInnerBlurOffset;
         Bitmap thickInnerBlur = glowShape.extractAlpha(mBlurPaint, thickInnerBlurOffset);
 
         // mask out the inner blur
@@ -214,6 +329,123 @@ public class HolographicOutlineHelper {
         glowShape.recycle();
     }
 
+    /**
+     * Same as {@link #applyExpensiveOutlineWithBlur} with the default alpha clip, on top of
+     * {@link AlphaBlur}. Everything is computed within the bounds of srcDst, which is where
+     * the framework version draws its result too.
+     */
+    private void applyExpensiveOutlineWithJavaBlur(Bitmap srcDst, int color, int outlineColor,
+            int thickness) {
+        final float outerRadius;
+        final float brightRadius;
+        final float innerRadius;
+        switch (thickness) {
+            case EXTRA_THICK:
+                outerRadius = sExtraThickOuterRadius;
+                brightRadius = sMediumOuterRadius;
+                innerRadius = sExtraThickInnerRadius;
+                break;
+            case THICK:
+                outerRadius = sThickOuterRadius;
+                brightRadius = sThinOuterRadius;
+                innerRadius = sThickInnerRadius;
+                break;
+            case MEDIUM:
+                outerRadius = sMediumOuterRadius;
+                brightRadius = sThinOuterRadius;
+                innerRadius = sMediumInnerRadius;
+                break;
+            default:
+                throw new RuntimeException("Invalid blur thickness");
+        }
+
+        final int width = srcDst.getWidth();
+        final int height = srcDst.getHeight();
+        final int count = width * height;
+        if (mPixels.length < count) {
+            mPixels = new int[count];
+            mShape = new int[count];
+            mOuter = new int[count];
+            mBright = new int[count];
+            mInner = new int[count];
+        }
+        if (mJavaBlur == null) {
+            mJavaBlur = new AlphaBlur();
+        }
+        final int[] pixels = mPixels;
+        final int[] shape = mShape;
+        final int[] outer = mOuter;
+        final int[] bright = mBright;
+        final int[] inner = mInner;
+        srcDst.getPixels(pixels, 0, width, 0, 0, width, height);
+
+        // Remove most of the alpha channel so as to ignore shadows, like mAlphaClipPaint
+        for (int i = 0; i < count; i++) {
+            final int a = pixels[i] >>> 24;
+            final int clipped;
+            if (a < ALPHA_CLIP_MIN) {
+                clipped = 0;
+            } else if (a >= ALPHA_CLIP_MAX) {
+                clipped = 255;
+            } else {
+                clipped = (a - ALPHA_CLIP_MIN) * 255 / (ALPHA_CLIP_MAX - ALPHA_CLIP_MIN);
+            }
+            shape[i] = clipped;
+            outer[i] = clipped;
+            bright[i] = clipped;
+            inner[i] = 255 - clipped;
+        }
+
+        // Outer blurs only keep what lies outside of the shape, the inner blur what lies inside
+        mJavaBlur.blur(outer, width, height, AlphaBlur.sigmaForRadius(outerRadius));
+        mJavaBlur.blur(bright, width, height, AlphaBlur.sigmaForRadius(brightRadius));
+        mJavaBlur.blur(inner, width, height, AlphaBlur.sigmaForRadius(innerRadius));
+        for (int i = 0; i < count; i++) {
+            final int s = shape[i];
+            outer[i] = outer[i] * (255 - s) / 255;
+            bright[i] = bright[i] * (255 - s) / 255;
+            inner[i] = inner[i] * s / 255;
+        }
+
+        // Draw the inner and outer blur in color, then the bright outline, over transparent
+        for (int i = 0; i < count; i++) {
+            pixels[i] = 0;
+        }
+        compositeAlpha(pixels, inner, count, color);
+        compositeAlpha(pixels, outer, count, color);
+        compositeAlpha(pixels, bright, count, outlineColor);
+        srcDst.setPixels(pixels, 0, width, 0, 0, width, height);
+    }
+
+    /**
+     * Draws the color through the alpha mask over the non premultiplied pixels, like drawing
+     * an alpha bitmap with a paint of that color.
+     */
+    private static void compositeAlpha(int[] pixels, int[] mask, int count, int color) {
+        final int ca = color >>> 24;
+        final int cr = (color >> 16) & 0xFF;
+        final int cg = (color >> 8) & 0xFF;
+        final int cb = color & 0xFF;
+        for (int i = 0; i < count; i++) {
+            final int sa = mask[i] * ca / 255;
+            if (sa == 0) {
+                continue;
+            }
+            final int dst = pixels[i];
+            final int da = dst >>> 24;
+            // Source over, in premultiplied space
+            final int oa = sa + da * (255 - sa) / 255;
+            if (oa == 0) {
+                continue;
+            }
+            final int dw = da * (255 - sa) / 255;
+            final int r = (cr * sa + ((dst >> 16) & 0xFF) * dw) / oa;
+            final int g = (cg * sa + ((dst >> 8) & 0xFF) * dw) / oa;
+            final int b = (cb * sa + (dst & 0xFF) * dw) / oa;
+            pixels[i] = (oa << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
     void applyExtraThickExpensiveOutlineWithBlur(Bitmap srcDst, Canvas srcDstCanvas, int color,
             int outlineColor) {
         applyExpensiveOutlineWithBlur(srcDst, srcDstCanvas, color, outlineColor, EXTRA_THICK);
@@ -235,4 +467,83 @@ public class HolographicOutlineHelper {
         applyExpensiveOutlineWithBlur(srcDst, srcDstCanvas, color, outlineColor, MEDIUM);
     }
 
+    /**
+     * Returns what the outline of the view is drawn from, to be used as the content of an
+     * outline cache key, or null if the outline of this view should not be cached. Only the
+     * icon of a TextView qualifies: its label is clipped out of the outline, and a new icon
+     * always comes with a new bitmap.
+     */
+    static Object getOutlineContent(View v) {
+        if (v instanceof TextView) {
+            final Drawable d = ((TextView) v).getCompoundDrawables()[1];
+            if (d instanceof FastBitmapDrawable) {
+                return ((FastBitmapDrawable) d).getBitmap();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the outline previously stored with {@link #putCachedOutline}, or null. The
+     * bitmap is shared and must not be modified or recycled.
+     */
+    static Bitmap getCachedOutline(Object content, int width, int height, int thickness,
+            int color, int outlineColor) {
+        if (content == null) {
+            return null;
+        }
+        final Bitmap b = sOutlineCache.get(
+                sLookupKey.set(content, width, height, thickness, color, outlineColor));
+        sLookupKey.content = null;
+        if (b != null) {
+            sOutlineCacheHits++;
+        } else {
+            sOutlineCacheMisses++;
+        }
+        return b;
+    }
+
+    /**
+     * Remembers an outline computed from the given content. The bitmap must not be modified
+     * afterwards.
+     */
+    static void putCachedOutline(Object content, int thickness, int color, int outlineColor,
+            Bitmap outline) {
+        if (content == null || outline == null) {
+            return;
+        }
+        final OutlineKey key = new OutlineKey().set(content, outline.getWidth(),
+                outline.getHeight(), thickness, color, outlineColor);
+        final Bitmap old = sOutlineCache.put(key, outline);
+        if (old != null) {
+            sOutlineCacheBytes -= old.getRowBytes() * old.getHeight();
+        }
+        sOutlineCacheBytes += outline.getRowBytes() * outline.getHeight();
+        final Iterator<Map.Entry<OutlineKey, Bitmap>> it = sOutlineCache.entrySet().iterator();
+        while (sOutlineCacheBytes > OUTLINE_CACHE_MAX_BYTES && it.hasNext()) {
+            final Bitmap evicted = it.next().getValue();
+            sOutlineCacheBytes -= evicted.getRowBytes() * evicted.getHeight();
+            it.remove();
+        }
+    }
+
+    static void clearOutlineCache() {
+        sOutlineCache.clear();
+        sOutlineCacheBytes = 0;
+    }
+
+    static int getOutlineCacheCount() {
+        return sOutlineCache.size();
+    }
+
+    static long getOutlineCacheBytes() {
+        return sOutlineCacheBytes;
+    }
+
+    static void dumpOutlineCache(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Outline cache: entries=" + sOutlineCache.size()
+                + " size=" + (sOutlineCacheBytes / 1024) + "KB"
+                + " hits=" + sOutlineCacheHits + " misses=" + sOutlineCacheMisses
+                + " javaBlur=" + sUseJavaBlur);
+    }
 }
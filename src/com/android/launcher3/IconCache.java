@@ -224,23 +224,20 @@ public class IconCache {
             ComponentName key = LauncherModel.getComponentNameFromResolveInfo(info);
             if (labelCache != null && labelCache.containsKey(key)) {
                 entry.title = labelCache.get(key).toString();
-                if (LauncherModel.DEBUG_LOADERS) {
-                    LauncherLog.d(TAG, "CacheLocked get title from cache: title = " + entry.title);
-                }                
+                LauncherLog.event(LauncherLog.CAT_ICON, LauncherLog.LEVEL_VERBOSE,
+                        "cacheLocked: title from label cache");
             } else {
                 entry.title = info.loadLabel(mPackageManager).toString();
-                if (LauncherModel.DEBUG_LOADERS) {
-                    LauncherLog.d(TAG, "CacheLocked get title from pms: title = " + entry.title);
-                }                
+                LauncherLog.event(LauncherLog.CAT_ICON, LauncherLog.LEVEL_VERBOSE,
+                        "cacheLocked: title from package manager");
                 if (labelCache != null) {
                     labelCache.put(key, entry.title);
                 }
             }
             if (entry.title == null) {
                 entry.title = info.activityInfo.name;
-                if (LauncherModel.DEBUG_LOADERS) {
-                    LauncherLog.d(TAG, "CacheLocked get title from activity information.");
-                }
+                LauncherLog.event(LauncherLog.CAT_ICON, LauncherLog.LEVEL_VERBOSE,
+                        "cacheLocked: title from activity name");
             }
 
             entry.icon = Utilities.createIconBitmap(
@@ -249,6 +246,27 @@ public class IconCache {
         return entry;
     }
 
+    int getEntryCount() {
+        synchronized (mCache) {
+            return mCache.size();
+        }
+    }
+
+    /**
+     * Returns the memory held by the cached icons, in bytes.
+     */
+    long getCacheBytes() {
+        synchronized (mCache) {
+            long bytes = 0;
+            for (CacheEntry e : mCache.values()) {
+                if (e.icon != null && e.icon != mDefaultIcon) {
+                    bytes += e.icon.getRowBytes() * e.icon.getHeight();
+                }
+            }
+            return bytes;
+        }
+    }
+
     public HashMap<ComponentName,Bitmap> getAllIcons() {
         synchronized (mCache) {
             HashMap<ComponentName,Bitmap> set = new HashMap<ComponentName,Bitmap>();
@@ -17,10 +17,13 @@
 package com.android.launcher3;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
 import android.widget.Toast;
 
 import com.android.launcher3.R;
@@ -33,87 +36,167 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
     public static final String SHORTCUT_MIMETYPE =
             "com.android.launcher/shortcut";
 
-    private final int[] mCoordinates = new int[2];
+    static final String TAG = "Launcher.InstallShortcutReceiver";
+
+    // Broadcasts received within this delay of the first pending one are installed together
+    private static final int INSTALL_BATCH_DELAY_MS = 250;
+
+    // Only touched on the main thread, where broadcasts are received. Each broadcast is kept
+    // alive with goAsync() until its shortcut is in the database, so that the process is not
+    // considered idle, and killed, while shortcuts are still queued.
+    private static final ArrayList<Intent> sPendingInstalls = new ArrayList<Intent>();
+    private static final ArrayList<PendingResult> sPendingResults = new ArrayList<PendingResult>();
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
 
     public void onReceive(Context context, Intent data) {
         if (!ACTION_INSTALL_SHORTCUT.equals(data.getAction())) {
             return;
         }
 
-        int screen = Launcher.getScreen();
-
-        if (!installShortcut(context, data, screen)) {
-            // The target screen is full, let's try the other screens
-            for (int i = 0; i < Launcher.SCREEN_COUNT; i++) {
-                if (i != screen && installShortcut(context, data, i)) break;
-            }
+        final Context appContext = context.getApplicationContext();
+        sPendingInstalls.add(data);
+        final PendingResult result = goAsync();
+        if (result != null) {
+            sPendingResults.add(result);
+        }
+        if (sPendingInstalls.size() == 1) {
+            sHandler.postDelayed(new Runnable() {
+                public void run() {
+                    flushPendingInstalls(appContext);
+                }
+            }, INSTALL_BATCH_DELAY_MS);
         }
     }
 
-    private boolean installShortcut(Context context, Intent data, int screen) {
-        String name = data.getStringExtra(Intent.EXTRA_SHORTCUT_NAME);
+    /**
+     * Places every pending shortcut on a single snapshot of the desktop occupancy, skipping the
+     * duplicates, and adds them all to the database at once.
+     */
+    static void flushPendingInstalls(Context context) {
+        if (sPendingInstalls.isEmpty()) {
+            return;
+        }
+        final ArrayList<Intent> pending = new ArrayList<Intent>(sPendingInstalls);
+        final ArrayList<PendingResult> results = new ArrayList<PendingResult>(sPendingResults);
+        sPendingInstalls.clear();
+        sPendingResults.clear();
+
+        final int[] pageOrder = LauncherModel.sVacancyIndex.getPageOrder();
+        CellOccupancy[] screens = LauncherModel.sVacancyIndex.snapshot();
+        if (screens == null) {
+            // The workspace is not loaded yet, ask the database once
+            screens = loadOccupancy(context, pageOrder);
+        }
+        HashSet<String> existing = null;
+
+        final LauncherModel model = ((LauncherApplication) context).getModel();
+        final ArrayList<ShortcutInfo> added = new ArrayList<ShortcutInfo>();
+        // Launcher.getScreen() is a page position, the index works with screens
+        final int page = Launcher.getScreen();
+        final int preferredScreen = page >= 0 && page < pageOrder.length ? pageOrder[page] : 0;
+        final int[] cellXY = new int[2];
+        boolean outOfSpace = false;
+        for (int i = 0; i < pending.size(); i++) {
+            final Intent data = pending.get(i);
+            final String name = data.getStringExtra(Intent.EXTRA_SHORTCUT_NAME);
+            final Intent intent = data.getParcelableExtra(Intent.EXTRA_SHORTCUT_INTENT);
+            if (intent == null) {
+                continue;
+            }
+            if (intent.getAction() == null) {
+                intent.setAction(Intent.ACTION_VIEW);
+            }
 
-        if (findEmptyCell(context, mCoordinates, screen)) {
-            Intent intent = data.getParcelableExtra(Intent.EXTRA_SHORTCUT_INTENT);
-            if (intent != null) {
-                if (intent.getAction() == null) {
-                    intent.setAction(Intent.ACTION_VIEW);
+            // By default, we allow for duplicate entries (located in
+            // different places)
+            final boolean duplicate = data.getBooleanExtra(Launcher.EXTRA_SHORTCUT_DUPLICATE, true);
+            final String key = LauncherModel.getShortcutKey(name, intent);
+            if (!duplicate) {
+                if (existing == null) {
+                    existing = LauncherModel.getShortcutKeys(context);
                 }
-
-                // By default, we allow for duplicate entries (located in
-                // different places)
-                boolean duplicate = data.getBooleanExtra(Launcher.EXTRA_SHORTCUT_DUPLICATE, true);
-                if (duplicate || !LauncherModel.shortcutExists(context, name, intent)) {
-                    LauncherApplication app = (LauncherApplication) context.getApplicationContext();
-                    ShortcutInfo info = app.getModel().addShortcut(context, data,
-                            LauncherSettings.Favorites.CONTAINER_DESKTOP, screen, mCoordinates[0],
-                            mCoordinates[1], true);
-                    if (info != null) {
-                        Toast.makeText(context, context.getString(R.string.shortcut_installed, name),
-                                Toast.LENGTH_SHORT).show();
-                    } else {
-                        return false;
-                    }
-                } else {
+                if (existing.contains(key)) {
                     Toast.makeText(context, context.getString(R.string.shortcut_duplicate, name),
                             Toast.LENGTH_SHORT).show();
+                    continue;
                 }
+            }
+
+            final int screen = findVacantCell(screens, pageOrder, preferredScreen, cellXY);
+            if (screen < 0) {
+                outOfSpace = true;
+                continue;
+            }
+            final ShortcutInfo info = model.infoFromShortcutIntent(context, data, null);
+            if (info == null) {
+                continue;
+            }
+            info.container = LauncherSettings.Favorites.CONTAINER_DESKTOP;
+            info.screen = screen;
+            info.cellX = cellXY[0];
+            info.cellY = cellXY[1];
+            screens[screen].set(cellXY[0], cellXY[1], true);
+            if (existing != null) {
+                existing.add(key);
+            }
+            added.add(info);
+            Toast.makeText(context, context.getString(R.string.shortcut_installed, name),
+                    Toast.LENGTH_SHORT).show();
+        }
 
-                return true;
+        LauncherModel.addItemsToDatabase(context, added, true, new Runnable() {
+            public void run() {
+                for (PendingResult result : results) {
+                    result.finish();
+                }
             }
-        } else {
+        });
+        if (outOfSpace) {
             Toast.makeText(context, context.getString(R.string.out_of_space),
                     Toast.LENGTH_SHORT).show();
         }
+        if (LauncherLog.DEBUG) {
+            LauncherLog.d(TAG, "flushPendingInstalls: installed " + added.size() + " of "
+                    + pending.size() + " shortcuts");
+        }
+    }
 
-        return false;
+    /**
+     * Finds a free cell on the preferred screen, then on the pages next to it.
+     *
+     * @return the screen of the cell, or -1 if the desktop is full.
+     */
+    private static int findVacantCell(CellOccupancy[] screens, int[] pageOrder,
+            int preferredScreen, int[] cellXY) {
+        for (int n = 0; n < pageOrder.length; n++) {
+            final int screen = WorkspaceVacancyIndex.screenAt(pageOrder, preferredScreen, n);
+            if (screen < screens.length && screens[screen].findFirstVacant(1, 1, cellXY)) {
+                return screen;
+            }
+        }
+        return -1;
     }
 
-    private static boolean findEmptyCell(Context context, int[] xy, int screen) {
+    private static CellOccupancy[] loadOccupancy(Context context, int[] pageOrder) {
         final int xCount = LauncherModel.getCellCountX();
         final int yCount = LauncherModel.getCellCountY();
-        boolean[][] occupied = new boolean[xCount][yCount];
+        int screenCount = 0;
+        for (int screen : pageOrder) {
+            screenCount = Math.max(screenCount, screen + 1);
+        }
+        final CellOccupancy[] screens = new CellOccupancy[screenCount];
+        for (int i = 0; i < screens.length; i++) {
+            screens[i] = new CellOccupancy(xCount, yCount);
+        }
 
         ArrayList<ItemInfo> items = LauncherModel.getItemsInLocalCoordinates(context);
-        ItemInfo item = null;
-        int cellX, cellY, spanX, spanY;
         for (int i = 0; i < items.size(); ++i) {
-            item = items.get(i);
-            if (item.container == LauncherSettings.Favorites.CONTAINER_DESKTOP) {
-                if (item.screen == screen) {
-                    cellX = item.cellX;
-                    cellY = item.cellY;
-                    spanX = item.spanX;
-                    spanY = item.spanY;
-                    for (int x = cellX; x < cellX + spanX && x < xCount; x++) {
-                        for (int y = cellY; y < cellY + spanY && y < yCount; y++) {
-                            occupied[x][y] = true;
-                        }
-                    }
-                }
+            final ItemInfo item = items.get(i);
+            if (item.container == LauncherSettings.Favorites.CONTAINER_DESKTOP
+                    && item.screen >= 0 && item.screen < screens.length) {
+                screens[item.screen].markSpan(item.cellX, item.cellY, item.spanX, item.spanY, true);
             }
         }
-
-        return CellLayout.findVacantCell(xy, 1, 1, xCount, yCount, occupied);
+        return screens;
     }
 }
@@ -85,11 +85,6 @@ class ItemInfo {
      * The position of the item in a drag-and-drop operation.
      */
     int[] dropPos = null;
-    
-    /**
-     * The bitmap of the item for drag useage, added by leeyb
-     */
-    Bitmap dragImage = null;
 
     ItemInfo() {
     }
@@ -103,7 +98,6 @@ class ItemInfo {
         screen = info.screen;
         itemType = info.itemType;
         container = info.container;
-        dragImage = info.dragImage;
     }
 
     /**
@@ -45,7 +45,6 @@ import android.content.ActivityNotFoundException;
 import android.content.BroadcastReceiver;
 import android.content.ClipData;
 import android.content.ClipDescription;
-import android.content.ComponentCallbacks2;
 import android.content.ComponentName;
 import android.content.ContentResolver;
 import android.content.Context;
@@ -68,7 +67,6 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
-import android.os.Message;
 import android.os.SystemClock;
 import android.os.SystemProperties;
 import android.provider.Settings;
@@ -98,7 +96,6 @@ import android.view.animation.AccelerateDecelerateInterpolator;
 import android.view.animation.AccelerateInterpolator;
 import android.view.animation.DecelerateInterpolator;
 import android.view.inputmethod.InputMethodManager;
-import android.widget.Advanceable;
 import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.IMTKWidget;
@@ -206,7 +203,6 @@ public final class Launcher extends Activity
     private SearchDropTargetBar mSearchDropTargetBar;
     private AppsCustomizeTabHost mAppsCustomizeTabHost;
     private AppsCustomizePagedView mAppsCustomizeContent;
-    private boolean mAutoAdvanceRunning = false;
 
     private Bundle mSavedState;
 
@@ -223,6 +219,7 @@ public final class Launcher extends Activity
 
     private LauncherModel mModel;
     private IconCache mIconCache;
+    private final MemoryGovernor mMemoryGovernor = new MemoryGovernor();
     private boolean mUserPresent = true;
     private boolean mVisible = false;
     private boolean mAttached = false;
@@ -234,13 +231,14 @@ public final class Launcher extends Activity
     private Intent mAppMarketIntent = null;
 
     // Related to the auto-advancing of widgets
-    private final int ADVANCE_MSG = 1;
     private final int mAdvanceInterval = 20000;
     private final int mAdvanceStagger = 250;
-    private long mAutoAdvanceSentTime;
-    private long mAutoAdvanceTimeLeft = -1;
-    private HashMap<View, AppWidgetProviderInfo> mWidgetsToAdvance =
-        new HashMap<View, AppWidgetProviderInfo>();
+    private final WidgetAdvanceScheduler mAdvanceScheduler = new WidgetAdvanceScheduler(
+            new WidgetAdvanceScheduler.Visibility() {
+                public boolean isOnScreen(View hostView) {
+                    return mWorkspace != null && mWorkspace.isWidgetOnScreen(hostView);
+                }
+            }, mAdvanceInterval, mAdvanceStagger);
 
     // Determines how long to wait after a rotation before restoring the screen orientation to
     // match the sensor state.
@@ -251,7 +249,7 @@ public final class Launcher extends Activity
     private static Drawable.ConstantState[] sVoiceSearchIcon = new Drawable.ConstantState[2];
     private static Drawable.ConstantState[] sAppMarketIcon = new Drawable.ConstantState[2];
 
-    static final ArrayList<String> sDumpLogs = new ArrayList<String>();
+    private static final FrameStats sTransitionStats = FrameStats.get("Launcher");
 
 
     private BubbleTextView mWaitingForResume;
@@ -317,6 +315,7 @@ public final class Launcher extends Activity
         }
         mAppWidgetManager = AppWidgetManager.getInstance(this);
         mAppWidgetHost = new LauncherAppWidgetHost(this, APPWIDGET_HOST_ID);
+        mAppWidgetHost.setUpdateGate(mWidgetUpdateGate);
         mAppWidgetHost.startListening();
 
         if (PROFILE_STARTUP) {
@@ -327,6 +326,7 @@ public final class Launcher extends Activity
         checkForLocaleChange();
         setContentView(R.layout.launcher);
         setupViews();
+        registerMemoryCaches();
         showFirstRunWorkspaceCling();
         
         lockAllApps();
@@ -614,6 +614,8 @@ public final class Launcher extends Activity
         
     	// Launch performance
         getWindow().getDecorView().getViewTreeObserver().removeOnPostDrawListener(mPostDrawListener);
+        // The user left the home screen, which ends any editing session
+        mWorkspace.getDragImageCache().clear();
     }
 
     @Override
@@ -759,7 +761,19 @@ public final class Launcher extends Activity
                     + ",uniChar = " + uniChar + ",handled = " + handled + ",isKeyNotWhitespace = "
                     + isKeyNotWhitespace);
         }
-        if (!handled && acceptFilter() && isKeyNotWhitespace) {
+        // A space separates the words of a filter already typed; it does not start one
+        final boolean isFilterSpace = keyCode == KeyEvent.KEYCODE_SPACE
+                && mAppsCustomizeContent != null && mAppsCustomizeContent.isFiltering();
+        if (!handled && acceptFilter() && mState == State.APPS_CUSTOMIZE
+                && (isKeyNotWhitespace || isFilterSpace || keyCode == KeyEvent.KEYCODE_DEL)) {
+            // Type-to-filter the all apps tab instead of starting a global search
+            boolean gotKey = TextKeyListener.getInstance().onKeyDown(mWorkspace, mDefaultKeySsb,
+                    keyCode, event);
+            if (gotKey) {
+                mAppsCustomizeContent.setAppFilter(getTypedText());
+                return true;
+            }
+        } else if (!handled && acceptFilter() && isKeyNotWhitespace) {
             boolean gotKey = TextKeyListener.getInstance().onKeyDown(mWorkspace, mDefaultKeySsb,
                     keyCode, event);
             if (gotKey && mDefaultKeySsb != null && mDefaultKeySsb.length() > 0) {
@@ -791,6 +805,13 @@ public final class Launcher extends Activity
         Selection.setSelection(mDefaultKeySsb, 0);
     }
 
+    private void clearAppFilter() {
+        clearTypedText();
+        if (mAppsCustomizeContent != null) {
+            mAppsCustomizeContent.setAppFilter(null);
+        }
+    }
+
     /**
      * Given the integer (ordinal) value of a State enum instance, convert it to a variable of type
      * State
@@ -970,15 +991,22 @@ public final class Launcher extends Activity
                     + ", cellY = " + cellY);
         }    			
         final int[] cellXY = mTmpAddItemCellCoordinates;
-        final CellLayout layout = getCellLayout(container, screen);
+        CellLayout layout = getCellLayout(container, screen);
 
         // First we check if we already know the exact location where we want to add this item.
         if (cellX >= 0 && cellY >= 0) {
             cellXY[0] = cellX;
             cellXY[1] = cellY;
         } else if (!layout.findCellForSpan(cellXY, 1, 1)) {
-            showOutOfSpaceMessage();
-            return;
+            // The screen is full, use the closest desktop screen that has room
+            final int vacantScreen = container == LauncherSettings.Favorites.CONTAINER_DESKTOP
+                    ? LauncherModel.sVacancyIndex.findVacantCell(screen, 1, 1, cellXY) : -1;
+            if (vacantScreen < 0) {
+                showOutOfSpaceMessage();
+                return;
+            }
+            screen = vacantScreen;
+            layout = getCellLayout(container, screen);
         }
 
         final ShortcutInfo info = mModel.getShortcutInfo(getPackageManager(), data, this);
@@ -1210,70 +1238,38 @@ public final class Launcher extends Activity
     public void onWindowVisibilityChanged(int visibility) {
         mVisible = visibility == View.VISIBLE;
         updateRunning();
-    }
-
-    private void sendAdvanceMessage(long delay) {
-        mHandler.removeMessages(ADVANCE_MSG);
-        Message msg = mHandler.obtainMessage(ADVANCE_MSG);
-        mHandler.sendMessageDelayed(msg, delay);
-        mAutoAdvanceSentTime = System.currentTimeMillis();
+        if (mVisible && mWorkspace != null) {
+            mWorkspace.applyPendingWidgetUpdates();
+        }
     }
 
     private void updateRunning() {
-        boolean autoAdvanceRunning = mVisible && mUserPresent && !mWidgetsToAdvance.isEmpty();
-        if (autoAdvanceRunning != mAutoAdvanceRunning) {
-            mAutoAdvanceRunning = autoAdvanceRunning;
-            if (autoAdvanceRunning) {
-                long delay = mAutoAdvanceTimeLeft == -1 ? mAdvanceInterval : mAutoAdvanceTimeLeft;
-                sendAdvanceMessage(delay);
-            } else {
-                if (!mWidgetsToAdvance.isEmpty()) {
-                    mAutoAdvanceTimeLeft = Math.max(0, mAdvanceInterval -
-                            (System.currentTimeMillis() - mAutoAdvanceSentTime));
-                }
-                mHandler.removeMessages(ADVANCE_MSG);
-                mHandler.removeMessages(0); // Remove messages sent using postDelayed()
-            }
-        }
+        mAdvanceScheduler.setRunning(mVisible && mUserPresent);
     }
 
-    private final Handler mHandler = new Handler() {
-        @Override
-        public void handleMessage(Message msg) {
-            if (msg.what == ADVANCE_MSG) {
-                int i = 0;
-                for (View key: mWidgetsToAdvance.keySet()) {
-                    final View v = key.findViewById(mWidgetsToAdvance.get(key).autoAdvanceViewId);
-                    final int delay = mAdvanceStagger * i;
-                    if (v instanceof Advanceable) {
-                       postDelayed(new Runnable() {
-                           public void run() {
-                               ((Advanceable) v).advance();
-                           }
-                       }, delay);
-                    }
-                    i++;
-                }
-                sendAdvanceMessage(mAdvanceInterval);
+    private final Handler mHandler = new Handler();
+
+    /**
+     * Holds back the updates of widgets the user cannot see: on another page, behind all apps or
+     * while the launcher is hidden. Workspace.applyPendingWidgetUpdates() applies them later.
+     */
+    private final LauncherAppWidgetHostView.UpdateGate mWidgetUpdateGate =
+            new LauncherAppWidgetHostView.UpdateGate() {
+        public boolean shouldDeferUpdate(LauncherAppWidgetHostView view) {
+            // Widgets being bound, added or dragged are not on a page
+            if (mWorkspace == null || !(view.getParent() instanceof CellLayoutChildren)) {
+                return false;
             }
+            return !mVisible || isAllAppsVisible() || !mWorkspace.isWidgetOnScreen(view);
         }
     };
 
     void addWidgetToAutoAdvanceIfNeeded(View hostView, AppWidgetProviderInfo appWidgetInfo) {
-        if (appWidgetInfo == null || appWidgetInfo.autoAdvanceViewId == -1) return;
-        View v = hostView.findViewById(appWidgetInfo.autoAdvanceViewId);
-        if (v instanceof Advanceable) {
-            mWidgetsToAdvance.put(hostView, appWidgetInfo);
-            ((Advanceable) v).fyiWillBeAdvancedByHostKThx();
-            updateRunning();
-        }
+        mAdvanceScheduler.add(hostView, appWidgetInfo);
     }
 
     void removeWidgetToAutoAdvance(View hostView) {
-        if (mWidgetsToAdvance.containsKey(hostView)) {
-            mWidgetsToAdvance.remove(hostView);
-            updateRunning();
-        }
+        mAdvanceScheduler.remove(hostView);
     }
 
     public void removeAppWidget(LauncherAppWidgetInfo launcherInfo) {
@@ -1413,8 +1409,8 @@ public final class Launcher extends Activity
             LauncherLog.d(TAG, "(Launcher)onDestroy: this = " + this);
         }
         // Remove all pending runnables
-        mHandler.removeMessages(ADVANCE_MSG);
-        mHandler.removeMessages(0);
+        mHandler.removeCallbacksAndMessages(null);
+        mAdvanceScheduler.clear();
         mWorkspace.removeCallbacks(mBuildLayersRunnable);
 
         // Stop callbacks from LauncherModel
@@ -1429,8 +1425,6 @@ public final class Launcher extends Activity
         }
         mAppWidgetHost = null;
 
-        mWidgetsToAdvance.clear();
-
         TextKeyListener.getInstance().release();
 
 
@@ -1457,6 +1451,13 @@ public final class Launcher extends Activity
         return mDragController;
     }
 
+    /**
+     * Returns true while the workspace / all apps transition is animating.
+     */
+    boolean isStateTransitionRunning() {
+        return mStateAnimation != null && mStateAnimation.isRunning();
+    }
+
     @Override
     public void startActivityForResult(Intent intent, int requestCode) {
         if (requestCode >= 0) mWaitingForResult = true;
@@ -1795,7 +1796,9 @@ public final class Launcher extends Activity
             LauncherLog.d(TAG, "Back key pressed, mState = " + mState);
         }
         if (mState == State.APPS_CUSTOMIZE || mWorkspace.isPreviewsState()) {
-        	if (isAllAppsCustomizeOpen() && mAppsCustomizeContent.isPreviewsState()) {
+        	if (isAllAppsCustomizeOpen() && mAppsCustomizeContent.isFiltering()) {
+        		clearAppFilter();
+        	} else if (isAllAppsCustomizeOpen() && mAppsCustomizeContent.isPreviewsState()) {
         		mAppsCustomizeContent.showPreviews(false);
 			} else {
 				showWorkspace(true);
@@ -2103,7 +2106,7 @@ public final class Launcher extends Activity
             }
     	}
     	
-        Folder folder = folderIcon.mFolder;
+        Folder folder = folderIcon.getFolder();
         FolderInfo info = folder.mInfo;
 
         growAndFadeOutFolderIcon(folderIcon);
@@ -2442,6 +2445,7 @@ public final class Launcher extends Activity
      * of the screen. modified by leeyb
      */
     private void showAppsCustomizeHelper(boolean animated, final boolean springLoaded) {
+        final long transitionStart = FrameStats.begin();
         if (mStateAnimation != null) {
             mStateAnimation.cancel();
             mStateAnimation = null;
@@ -2520,6 +2524,7 @@ public final class Launcher extends Activity
                         ((LauncherTransitionable) toView).onLauncherTransitionEnd(instance,
                         		translateAnim, false);
                     }
+                    mDragController.invalidateDropTargetGeometry();
 
 //                    if (!springLoaded && !LauncherApplication.isScreenLarge()) {
                         // Hide the workspace scrollbar
@@ -2574,6 +2579,8 @@ public final class Launcher extends Activity
             }
 //            updateWallpaperVisibility(false);
         }
+        mDragController.invalidateDropTargetGeometry();
+        sTransitionStats.end(FrameStats.SHOW_APPS_CUSTOMIZE, transitionStart);
     }
 
     /**
@@ -2582,6 +2589,7 @@ public final class Launcher extends Activity
      * @param animated If true, the transition will be animated.	modified by leeyb
      */
     private void hideAppsCustomizeHelper(boolean animated, final boolean springLoaded) {
+        final long transitionStart = FrameStats.begin();
         if (mStateAnimation != null) {
             mStateAnimation.cancel();
             mStateAnimation = null;
@@ -2643,6 +2651,7 @@ public final class Launcher extends Activity
                         ((LauncherTransitionable) fromView).onLauncherTransitionEnd(instance,
                                 alphaAnim, true);
                     }
+                    mDragController.invalidateDropTargetGeometry();
                 }
             });
 //            mHotseat.setVisibility(View.VISIBLE);
@@ -2659,15 +2668,121 @@ public final class Launcher extends Activity
             }
 //            mWorkspace.hideScrollingIndicator(false);
         }
+        mDragController.invalidateDropTargetGeometry();
+        sTransitionStats.end(FrameStats.HIDE_APPS_CUSTOMIZE, transitionStart);
     }
 
     @Override
     public void onTrimMemory(int level) {
         super.onTrimMemory(level);
         Log.d(TAG, "(Launcher)onTrimMemory level = " + level);
-        if (level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
-            mAppsCustomizeTabHost.onTrimMemory();
-        }
+        mMemoryGovernor.onTrimMemory(level);
+    }
+
+    /**
+     * Registers the caches which the memory governor releases when memory gets low.
+     */
+    private void registerMemoryCaches() {
+        mMemoryGovernor.register("folder previews", MemoryGovernor.TIER_HIDDEN, false,
+                new MemoryGovernor.Cache() {
+            private final long[] mBytes = new long[1];
+
+            public int getEntryCount() {
+                return mWorkspace.getFolderPreviewFootprint(mBytes);
+            }
+
+            public long getSizeEstimate() {
+                getEntryCount();
+                return mBytes[0];
+            }
+
+            public void evict(int tier) {
+                mWorkspace.releaseFolderPreviews();
+                // Closed folder views go too; their icons are shared with the model, so they
+                // hold no bitmaps of their own and are not counted above
+                mWorkspace.releaseClosedFolders();
+            }
+        });
+        mMemoryGovernor.register("drag images", MemoryGovernor.TIER_RUNNING, false,
+                new MemoryGovernor.Cache() {
+            public int getEntryCount() {
+                return mWorkspace.getDragImageCache().size();
+            }
+
+            public long getSizeEstimate() {
+                return mWorkspace.getDragImageCache().getBytes();
+            }
+
+            public void evict(int tier) {
+                mWorkspace.getDragImageCache().clear();
+            }
+        });
+        mMemoryGovernor.register("outlines", MemoryGovernor.TIER_RUNNING, false,
+                new MemoryGovernor.Cache() {
+            public int getEntryCount() {
+                return HolographicOutlineHelper.getOutlineCacheCount();
+            }
+
+            public long getSizeEstimate() {
+                return HolographicOutlineHelper.getOutlineCacheBytes();
+            }
+
+            public void evict(int tier) {
+                HolographicOutlineHelper.clearOutlineCache();
+            }
+        });
+        // Hiding the all apps content lets the framework release its display lists and layers;
+        // there is nothing to measure, so it reports no size
+        mMemoryGovernor.register("all apps content", MemoryGovernor.TIER_HIDDEN, false,
+                new MemoryGovernor.Cache() {
+            public int getEntryCount() {
+                return 0;
+            }
+
+            public long getSizeEstimate() {
+                return 0;
+            }
+
+            public void evict(int tier) {
+                mAppsCustomizeTabHost.onTrimMemory();
+            }
+        });
+        mMemoryGovernor.register("widget previews", MemoryGovernor.TIER_CACHES, false,
+                new MemoryGovernor.Cache() {
+            private final long[] mBytes = new long[1];
+
+            public int getEntryCount() {
+                return mAppsCustomizeContent != null
+                        ? mAppsCustomizeContent.getWidgetPreviewFootprint(mBytes) : 0;
+            }
+
+            public long getSizeEstimate() {
+                return getEntryCount() > 0 ? mBytes[0] : 0;
+            }
+
+            public void evict(int tier) {
+                // The pages are reloaded when all apps opens; leave them alone while it shows
+                if (mAppsCustomizeContent != null && !isAllAppsVisible()) {
+                    mAppsCustomizeContent.clearAllWidgetPages();
+                }
+            }
+        });
+        // Bound apps and shortcuts keep their own references to these icons, so flushing the
+        // cache mostly drops entries rather than freeing memory
+        mMemoryGovernor.register("icons", MemoryGovernor.TIER_CACHES, true,
+                new MemoryGovernor.Cache() {
+            public int getEntryCount() {
+                return mIconCache.getEntryCount();
+            }
+
+            public long getSizeEstimate() {
+                return mIconCache.getCacheBytes();
+            }
+
+            public void evict(int tier) {
+                mIconCache.flush();
+            }
+        });
     }
 
 	void showWorkspace(boolean animated) {
@@ -2678,6 +2793,7 @@ public final class Launcher extends Activity
         if (mState != State.WORKSPACE) {
             mWorkspace.setVisibility(View.VISIBLE);
             hideAppsCustomizeHelper(animated, false);
+            clearAppFilter();
 
             // Show the search bar and hotseat
 //            mSearchDropTargetBar.showSearchBar(animated);
@@ -2698,6 +2814,7 @@ public final class Launcher extends Activity
         // Resume the auto-advance of widgets
         mUserPresent = true;
         updateRunning();
+        mWorkspace.applyPendingWidgetUpdates();
 
         // send an accessibility event to announce the context change
         getWindow().getDecorView().sendAccessibilityEvent(AccessibilityEvent.TYPE_VIEW_SELECTED);
@@ -3215,7 +3332,7 @@ public final class Launcher extends Activity
             layoutParent.requestChildLayout();  
         }
         workspace.invalidate();
-        mWidgetsToAdvance.clear();
+        mAdvanceScheduler.clear();
         if (mHotseat != null) {
             mHotseat.resetLayout();
         }
@@ -3228,9 +3345,8 @@ public final class Launcher extends Activity
      */
     public void bindItems(ArrayList<ItemInfo> shortcuts, int start, int end) {
         setLoadOnResume();
-        if (LauncherLog.DEBUG) {
-            LauncherLog.d(TAG, "bindItems: start = " + start + ",end = " + end + ",this = " + this);
-        }
+        LauncherLog.event(LauncherLog.CAT_BIND, LauncherLog.LEVEL_DEBUG,
+                "bindItems: start = %d, end = %d", start, end);
         final Workspace workspace = mWorkspace;
         for (int i=start; i<end; i++) {
             final ItemInfo item = shortcuts.get(i);
@@ -3675,10 +3791,24 @@ public final class Launcher extends Activity
     public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
         super.dump(prefix, fd, writer, args);
         writer.println(" ");
-        writer.println("Debug logs: ");
-        for (int i = 0; i < sDumpLogs.size(); i++) {
-            writer.println("  " + sDumpLogs.get(i));
+        EventJournal.dump("  ", writer, EventJournal.parseTypes(args));
+        if (mWorkspace != null) {
+            mWorkspace.getLayerManager().dump("  ", writer);
+            mWorkspace.getDragImageCache().dump("  ", writer);
+        }
+        mAdvanceScheduler.dump("  ", writer);
+        if (mWorkspace != null) {
+            mWorkspace.dumpWidgetUpdates("  ", writer);
         }
+        LauncherModel.sVacancyIndex.dump("  ", writer);
+        HolographicOutlineHelper.dumpOutlineCache("  ", writer);
+        mMemoryGovernor.dump("  ", writer);
+        if (mDragController != null) {
+            mDragController.dump("  ", writer);
+        }
+        writer.println("Frame stats: ");
+        FrameStats.dumpAll("  ", writer);
+        LauncherLog.dumpEvents("  ", writer);
     }
 
     void rememberDesktopOrder() {
@@ -3693,6 +3823,20 @@ public final class Launcher extends Activity
         editor.putString(Workspace.WORKSPACE_CELLLAYOUT_ORDER, sb.toString());
         Log.v("leeyb", "rememberDesktopOrder:" + sb.toString());
         editor.commit();
+        updateVacancyPageOrder();
+    }
+
+    /**
+     * Tells the vacancy index which screen each page shows, so that it searches the pages the
+     * workspace really has, in the order the user sees them.
+     */
+    private void updateVacancyPageOrder() {
+        final int count = mWorkspace.getPageCount();
+        final int[] pageOrder = new int[count];
+        for (int i = 0; i < count; i++) {
+            pageOrder[i] = mWorkspace.indexOfChild(mWorkspace.getPageAt(i));
+        }
+        LauncherModel.sVacancyIndex.setPageOrder(pageOrder);
     }
     
     private void syncWorkspacePages() {
@@ -3703,6 +3847,7 @@ public final class Launcher extends Activity
             generateCellLayout(true);
         }
         mWorkspace.restorePageOrderFromKey(args);
+        updateVacancyPageOrder();
     }
 
     CellLayout generateCellLayout(boolean attachToWorkspace) {
@@ -31,17 +31,30 @@ import android.view.MotionEvent;
  * always pick up and move widgets.
  */
 public class LauncherAppWidgetHost extends AppWidgetHost {
+    private LauncherAppWidgetHostView.UpdateGate mUpdateGate;
+
     public LauncherAppWidgetHost(Context context, int hostId) {
         super(context, hostId);
     }
 
+    /**
+     * Sets the gate deciding when the views created from now on apply their updates.
+     */
+    void setUpdateGate(LauncherAppWidgetHostView.UpdateGate gate) {
+        mUpdateGate = gate;
+    }
+
     @Override
     protected AppWidgetHostView onCreateView(Context context, int appWidgetId,
             AppWidgetProviderInfo appWidget) {
+        final LauncherAppWidgetHostView view;
         if ("com.android.widget.weather".equals(appWidget.provider.getPackageName())) {
-            return new LauncherAppWidgetHostViewSpecial(context);
+            view = new LauncherAppWidgetHostViewSpecial(context);
+        } else {
+            view = new LauncherAppWidgetHostView(context);
         }
-        return new LauncherAppWidgetHostView(context);
+        view.setUpdateGate(mUpdateGate);
+        return view;
     }
 
     @Override
@@ -16,27 +16,120 @@
 
 package com.android.launcher3;
 
+import java.io.PrintWriter;
+
 import android.appwidget.AppWidgetHostView;
 import android.content.Context;
+import android.os.SystemClock;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
+import android.widget.RemoteViews;
 
 /**
  * {@inheritDoc}
  */
 public class LauncherAppWidgetHostView extends AppWidgetHostView {
+    /**
+     * Decides whether the widget applies its updates as they come, or keeps them until the user
+     * can see it.
+     */
+    interface UpdateGate {
+        boolean shouldDeferUpdate(LauncherAppWidgetHostView view);
+    }
+
     private boolean mHasPerformedLongPress;
     private CheckForLongPress mPendingCheckForLongPress;
     private LayoutInflater mInflater;
 
+    private UpdateGate mUpdateGate;
+    /**
+     * The updates received while deferred, folded into one the way AppWidgetService folds
+     * partial updates: actions of later updates replace the ones they overwrite, the others are
+     * kept in order. An update with another layout starts over. Null when nothing is pending.
+     */
+    private RemoteViews mPendingUpdate;
+
+    // Update counters reported by dumpUpdateStats()
+    private long mFirstUpdateTime;
+    private int mUpdatesReceived;
+    private int mUpdatesDeferred;
+    private int mUpdatesMerged;
+    private int mPendingFlushes;
+
     public LauncherAppWidgetHostView(Context context) {
         super(context);
         mInflater = (LayoutInflater) context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
     }
 
+    void setUpdateGate(UpdateGate gate) {
+        mUpdateGate = gate;
+    }
+
+    @Override
+    public void updateAppWidget(RemoteViews remoteViews) {
+        if (mUpdatesReceived++ == 0) {
+            mFirstUpdateTime = SystemClock.uptimeMillis();
+        }
+        if (remoteViews != null && mUpdateGate != null && mUpdateGate.shouldDeferUpdate(this)) {
+            mUpdatesDeferred++;
+            if (mPendingUpdate == null
+                    || mPendingUpdate.getLayoutId() != remoteViews.getLayoutId()) {
+                // Nothing to merge into, or the new layout makes the pending actions moot. Keep
+                // a copy, merging modifies the update merged into.
+                mPendingUpdate = remoteViews.clone();
+            } else {
+                mPendingUpdate.mergeRemoteViews(remoteViews);
+                mUpdatesMerged++;
+            }
+            return;
+        }
+        if (remoteViews == null) {
+            // The widget falls back to its default view, the pending actions no longer apply
+            mPendingUpdate = null;
+        }
+        applyPendingUpdates();
+        super.updateAppWidget(remoteViews);
+    }
+
+    /**
+     * Applies the deferred updates as one, unless the gate still defers them.
+     *
+     * @return true if there were updates to apply.
+     */
+    boolean applyPendingUpdatesIfAllowed() {
+        if (mPendingUpdate == null
+                || (mUpdateGate != null && mUpdateGate.shouldDeferUpdate(this))) {
+            return false;
+        }
+        applyPendingUpdates();
+        return true;
+    }
+
+    private void applyPendingUpdates() {
+        if (mPendingUpdate == null) {
+            return;
+        }
+        final RemoteViews update = mPendingUpdate;
+        mPendingUpdate = null;
+        super.updateAppWidget(update);
+        mPendingFlushes++;
+    }
+
+    void dumpUpdateStats(String prefix, PrintWriter writer) {
+        final long elapsed = SystemClock.uptimeMillis() - mFirstUpdateTime;
+        final float perMinute = mUpdatesReceived > 0 && elapsed > 0
+                ? mUpdatesReceived * 60000f / elapsed : 0;
+        writer.println(prefix + "Widget " + getAppWidgetId() + ": updates=" + mUpdatesReceived
+                + " perMinute=" + String.format("%.1f", perMinute)
+                + " deferred=" + mUpdatesDeferred
+                + " merged=" + mUpdatesMerged
+                + " pending=" + (mPendingUpdate != null)
+                + " flushes=" + mPendingFlushes);
+    }
+
     @Override
     protected View getErrorView() {
         return mInflater.inflate(R.layout.appwidget_error, this, false);
@@ -1,10 +1,15 @@
 package com.android.launcher3;
 
+import android.os.SystemClock;
+import android.os.SystemProperties;
 import android.util.Config;
 import android.util.Log;
 
 import com.mediatek.xlog.Xlog;
 
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+
 public final class LauncherLog {
     static final boolean DEBUG = true;
     static final boolean DEBUG_MOTION = true;
@@ -19,6 +24,46 @@ public final class LauncherLog {
     public static final boolean DEBUG_AUTOTESTCASE = true;
     private static final String MODULE_NAME = "Launcher";
     private static final LauncherLog INSTANCE = new LauncherLog();
+
+    /*
+     * Structured events. Unlike the methods above, events are not formatted when they are
+     * recorded: the call site passes a constant format and up to four primitive arguments,
+     * which are copied into a preallocated ring buffer and only formatted when the buffer is
+     * dumped, through Launcher.dump(). Hot paths can therefore keep their diagnostics on.
+     */
+
+    /** Event categories, which can be combined in {@link #setEventCategories}. */
+    static final int CAT_LOADER = 1 << 0;
+    static final int CAT_BIND = 1 << 1;
+    static final int CAT_ICON = 1 << 2;
+    static final int CAT_APPS = 1 << 3;
+    static final int CAT_QUEUE = 1 << 4;
+    static final int CAT_DRAG = 1 << 5;
+    static final int CAT_LAYOUT = 1 << 6;
+    static final int CAT_ALL = (1 << 7) - 1;
+    private static final String[] CATEGORY_NAMES = {
+        "loader", "bind", "icon", "apps", "queue", "drag", "layout"
+    };
+
+    /** Event levels, events under {@link #setEventLevel} are dropped. */
+    static final int LEVEL_VERBOSE = 0;
+    static final int LEVEL_DEBUG = 1;
+    static final int LEVEL_INFO = 2;
+    static final int LEVEL_WARN = 3;
+    private static final char[] LEVEL_NAMES = { 'V', 'D', 'I', 'W' };
+
+    private static final int EVENT_CAPACITY = 1024; // Must be a power of two
+    private static final int EVENT_ARGS = 4;
+    private static final long[] sEventTimes = new long[EVENT_CAPACITY];
+    private static final int[] sEventKinds = new int[EVENT_CAPACITY];
+    private static final String[] sEventFormats = new String[EVENT_CAPACITY];
+    private static final long[] sEventArgs = new long[EVENT_CAPACITY * EVENT_ARGS];
+    private static final AtomicLong sNextEventSequence = new AtomicLong();
+
+    private static volatile int sEventCategories =
+            SystemProperties.getInt("debug.launcher3.events", CAT_ALL);
+    private static volatile int sEventLevel = LEVEL_DEBUG;
+    private static volatile boolean sEventEcho = false;
     
     /**
      * private constructor here, It is a singleton class.
@@ -129,4 +174,95 @@ public final class LauncherLog {
     public static void v(String tag, String msg, Throwable t){
         Xlog.v(MODULE_NAME, tag + ", " + msg, t);
     }
+
+    static void setEventCategories(int categories) {
+        sEventCategories = categories;
+    }
+
+    static void setEventLevel(int level) {
+        sEventLevel = Math.max(LEVEL_VERBOSE, Math.min(LEVEL_WARN, level));
+    }
+
+    /**
+     * Also prints every recorded event to the log, formatted on the spot.
+     */
+    static void setEventEcho(boolean echo) {
+        sEventEcho = echo;
+    }
+
+    static boolean isEventEnabled(int category, int level) {
+        return (sEventCategories & category) != 0 && level >= sEventLevel;
+    }
+
+    static void event(int category, int level, String format) {
+        event(category, level, format, 0, 0, 0, 0);
+    }
+
+    static void event(int category, int level, String format, long a) {
+        event(category, level, format, a, 0, 0, 0);
+    }
+
+    static void event(int category, int level, String format, long a, long b) {
+        event(category, level, format, a, b, 0, 0);
+    }
+
+    static void event(int category, int level, String format, long a, long b, long c) {
+        event(category, level, format, a, b, c, 0);
+    }
+
+    /**
+     * Records an event, without allocating.
+     *
+     * @param format a constant {@link String#format} pattern using one %d per argument.
+     */
+    static void event(int category, int level, String format, long a, long b, long c, long d) {
+        if (!isEventEnabled(category, level)) {
+            return;
+        }
+        // Concurrent writers get distinct slots; a dump racing with a writer which wraps around
+        // may show a mixed up event, which is acceptable for diagnostics
+        final int slot = (int) (sNextEventSequence.getAndIncrement() & (EVENT_CAPACITY - 1));
+        sEventTimes[slot] = SystemClock.uptimeMillis();
+        sEventKinds[slot] = (Integer.numberOfTrailingZeros(category) << 8) | level;
+        sEventFormats[slot] = format;
+        final int base = slot * EVENT_ARGS;
+        sEventArgs[base] = a;
+        sEventArgs[base + 1] = b;
+        sEventArgs[base + 2] = c;
+        sEventArgs[base + 3] = d;
+        if (sEventEcho) {
+            Xlog.d(MODULE_NAME, formatEvent(slot));
+        }
+    }
+
+    private static String formatEvent(int slot) {
+        final int kind = sEventKinds[slot];
+        final int base = slot * EVENT_ARGS;
+        String message;
+        try {
+            message = String.format(sEventFormats[slot], sEventArgs[base], sEventArgs[base + 1],
+                    sEventArgs[base + 2], sEventArgs[base + 3]);
+        } catch (RuntimeException e) {
+            message = sEventFormats[slot];
+        }
+        return sEventTimes[slot] + " " + LEVEL_NAMES[kind & 0xFF] + "/"
+                + CATEGORY_NAMES[kind >> 8] + ": " + message;
+    }
+
+    /**
+     * Prints the recorded events, oldest first.
+     */
+    static void dumpEvents(String prefix, PrintWriter writer) {
+        final long end = sNextEventSequence.get();
+        final long start = Math.max(0, end - EVENT_CAPACITY);
+        writer.println(prefix + "Events: " + (end - start) + " of " + end
+                + " recorded, categories=0x" + Integer.toHexString(sEventCategories)
+                + " level=" + LEVEL_NAMES[sEventLevel]);
+        for (long sequence = start; sequence < end; sequence++) {
+            final int slot = (int) (sequence & (EVENT_CAPACITY - 1));
+            if (sEventFormats[slot] != null) {
+                writer.println(prefix + "  " + formatEvent(slot));
+            }
+        }
+    }
 }
@@ -22,11 +22,13 @@ import android.appwidget.AppWidgetProviderInfo;
 import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.Intent.ShortcutIconResource;
+import android.content.OperationApplicationException;
 import android.content.pm.ActivityInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
@@ -56,9 +58,11 @@ import java.lang.ref.WeakReference;
 import java.net.URISyntaxException;
 import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 
@@ -120,6 +124,11 @@ public class LauncherModel extends BroadcastReceiver {
 
     // </ only access in worker thread >
 
+    // sVacancyIndex tracks the free cells of every desktop screen. It is updated together with
+    // the lists above, but synchronously so that it is current for the UI thread too.
+    static final WorkspaceVacancyIndex sVacancyIndex =
+            new WorkspaceVacancyIndex(Workspace.DEFAULT_WORKSPACE_ORDER_KEY.length());
+
     private IconCache mIconCache;
     private Bitmap mDefaultIcon;
 
@@ -216,32 +225,12 @@ public class LauncherModel extends BroadcastReceiver {
         final long itemId = item.id;
         final Uri uri = LauncherSettings.Favorites.getContentUri(itemId, false);
         final ContentResolver cr = context.getContentResolver();
+        sVacancyIndex.update(item);
 
         Runnable r = new Runnable() {
             public void run() {
                 cr.update(uri, values, null, null);
-
-                ItemInfo modelItem = sItemsIdMap.get(itemId);
-                if (item != modelItem) {
-                    // the modelItem needs to match up perfectly with item if our model is to be
-                    // consistent with the database-- for now, just require modelItem == item
-                    String msg = "item: " + ((item != null) ? item.toString() : "null") +
-                        "modelItem: " + ((modelItem != null) ? modelItem.toString() : "null") +
-                        "Error: ItemInfo passed to " + callingFunction + " doesn't match original";
-                    throw new RuntimeException(msg);
-                }
-
-                // Items are added/removed from the corresponding FolderInfo elsewhere, such
-                // as in Workspace.onDrop. Here, we just add/remove them from the list of items
-                // that are on the desktop, as appropriate
-                if (modelItem.container == LauncherSettings.Favorites.CONTAINER_DESKTOP ||
-                        modelItem.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
-                    if (!sWorkspaceItems.contains(modelItem)) {
-                        sWorkspaceItems.add(modelItem);
-                    }
-                } else {
-                    sWorkspaceItems.remove(modelItem);
-                }
+                updateItemInModel(item, callingFunction);
             }
         };
 
@@ -251,6 +240,35 @@ public class LauncherModel extends BroadcastReceiver {
             sWorker.post(r);
         }
     }
+
+    /**
+     * Checks that the item is the one the model knows, and keeps the list of desktop items in
+     * sync with its container. Runs on the worker thread.
+     */
+    private static void updateItemInModel(ItemInfo item, String callingFunction) {
+        ItemInfo modelItem = sItemsIdMap.get(item.id);
+        if (item != modelItem) {
+            // the modelItem needs to match up perfectly with item if our model is to be
+            // consistent with the database-- for now, just require modelItem == item
+            String msg = "item: " + ((item != null) ? item.toString() : "null") +
+                "modelItem: " + ((modelItem != null) ? modelItem.toString() : "null") +
+                "Error: ItemInfo passed to " + callingFunction + " doesn't match original";
+            throw new RuntimeException(msg);
+        }
+
+        // Items are added/removed from the corresponding FolderInfo elsewhere, such
+        // as in Workspace.onDrop. Here, we just add/remove them from the list of items
+        // that are on the desktop, as appropriate
+        if (modelItem.container == LauncherSettings.Favorites.CONTAINER_DESKTOP ||
+                modelItem.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
+            if (!sWorkspaceItems.contains(modelItem)) {
+                sWorkspaceItems.add(modelItem);
+            }
+        } else {
+            sWorkspaceItems.remove(modelItem);
+        }
+    }
+
     /**
      * Move an item in the DB to a new <container, screen, cellX, cellY>
      */
@@ -278,6 +296,56 @@ public class LauncherModel extends BroadcastReceiver {
         updateItemInDatabaseHelper(context, values, item, "moveItemInDatabase");
     }
 
+    /**
+     * Move several items in the DB to <container, screen> at the cells they hold, in a single
+     * transaction. Hotseat items are not supported, as their screen is derived from their cell.
+     */
+    static void moveItemsInDatabase(Context context, final ArrayList<ItemInfo> items,
+            final long container, final int screen) {
+        final ArrayList<ItemInfo> batch = new ArrayList<ItemInfo>(items);
+        final ArrayList<ContentProviderOperation> ops =
+                new ArrayList<ContentProviderOperation>(batch.size());
+        for (ItemInfo item : batch) {
+            item.container = container;
+            item.screen = screen;
+
+            final ContentValues values = new ContentValues();
+            values.put(LauncherSettings.Favorites.CONTAINER, item.container);
+            values.put(LauncherSettings.Favorites.CELLX, item.cellX);
+            values.put(LauncherSettings.Favorites.CELLY, item.cellY);
+            values.put(LauncherSettings.Favorites.SCREEN, item.screen);
+            ops.add(ContentProviderOperation.newUpdate(
+                    LauncherSettings.Favorites.getContentUri(item.id, false))
+                    .withValues(values).build());
+            sVacancyIndex.update(item);
+        }
+        if (ops.isEmpty()) {
+            return;
+        }
+        final ContentResolver cr = context.getContentResolver();
+
+        Runnable r = new Runnable() {
+            public void run() {
+                try {
+                    cr.applyBatch(LauncherProvider.AUTHORITY, ops);
+                } catch (RemoteException e) {
+                    Log.e(TAG, "Unable to move " + ops.size() + " items", e);
+                } catch (OperationApplicationException e) {
+                    Log.e(TAG, "Unable to move " + ops.size() + " items", e);
+                }
+                for (ItemInfo item : batch) {
+                    updateItemInModel(item, "moveItemsInDatabase");
+                }
+            }
+        };
+
+        if (sWorkerThread.getThreadId() == Process.myTid()) {
+            r.run();
+        } else {
+            sWorker.post(r);
+        }
+    }
+
     /**
      * Resize an item in the DB to a new <spanX, spanY, cellX, cellY>
      */
@@ -326,6 +394,32 @@ public class LauncherModel extends BroadcastReceiver {
         return result;
     }
 
+    /**
+     * Returns the keys of every shortcut in the DB, built by {@link #getShortcutKey}, so that
+     * many shortcuts can be checked for duplicates with a single query.
+     */
+    static HashSet<String> getShortcutKeys(Context context) {
+        final HashSet<String> keys = new HashSet<String>();
+        final ContentResolver cr = context.getContentResolver();
+        Cursor c = cr.query(LauncherSettings.Favorites.CONTENT_URI,
+            new String[] { "title", "intent" }, null, null, null);
+        if (c == null) {
+            return keys;
+        }
+        try {
+            while (c.moveToNext()) {
+                keys.add(c.getString(0) + '\n' + c.getString(1));
+            }
+        } finally {
+            c.close();
+        }
+        return keys;
+    }
+
+    static String getShortcutKey(String title, Intent intent) {
+        return title + '\n' + intent.toUri(0);
+    }
+
     /**
      * Returns an ItemInfo array containing all the items in the LauncherModel.
      * The ItemInfo.id is not set through this function.
@@ -436,32 +530,74 @@ public class LauncherModel extends BroadcastReceiver {
         item.id = app.getLauncherProvider().generateNewId();
         values.put(LauncherSettings.Favorites._ID, item.id);
         item.updateValuesWithCoordinates(values, item.cellX, item.cellY);
+        sVacancyIndex.update(item);
 
         Runnable r = new Runnable() {
             public void run() {
                 cr.insert(notify ? LauncherSettings.Favorites.CONTENT_URI :
                         LauncherSettings.Favorites.CONTENT_URI_NO_NOTIFICATION, values);
+                addItemToModel(item, "addItemToDatabase");
+            }
+        };
 
-                if (sItemsIdMap.containsKey(item.id)) {
-                    // we should not be adding new items in the db with the same id
-                    throw new RuntimeException("Error: ItemInfo id (" + item.id + ") passed to " +
-                        "addItemToDatabase already exists." + item.toString());
-                }
-                sItemsIdMap.put(item.id, item);
-                switch (item.itemType) {
-                    case LauncherSettings.Favorites.ITEM_TYPE_FOLDER:
-                        sFolders.put(item.id, (FolderInfo) item);
-                        // Fall through
-                    case LauncherSettings.Favorites.ITEM_TYPE_APPLICATION:
-                    case LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT:
-                        if (item.container == LauncherSettings.Favorites.CONTAINER_DESKTOP ||
-                                item.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
-                            sWorkspaceItems.add(item);
+        if (sWorkerThread.getThreadId() == Process.myTid()) {
+            r.run();
+        } else {
+            sWorker.post(r);
+        }
+    }
+
+    /**
+     * Add several items to the DB at the <container, screen, cellX, cellY> they already hold,
+     * with a single insert transaction and change notification.
+     */
+    static void addItemsToDatabase(Context context, final ArrayList<? extends ItemInfo> items,
+            final boolean notify) {
+        addItemsToDatabase(context, items, notify, null);
+    }
+
+    /**
+     * Same as above; onDone runs on the worker thread once the transaction has completed or
+     * failed. If any row fails the whole batch is rolled back and none of the items is added
+     * to the model.
+     */
+    static void addItemsToDatabase(Context context, final ArrayList<? extends ItemInfo> items,
+            final boolean notify, final Runnable onDone) {
+        final ArrayList<ItemInfo> batch = new ArrayList<ItemInfo>(items);
+        final ContentValues[] values = new ContentValues[batch.size()];
+        final ContentResolver cr = context.getContentResolver();
+        LauncherApplication app = (LauncherApplication) context.getApplicationContext();
+        for (int i = 0; i < values.length; i++) {
+            final ItemInfo item = batch.get(i);
+            values[i] = new ContentValues();
+            item.onAddToDatabase(values[i]);
+            item.id = app.getLauncherProvider().generateNewId();
+            values[i].put(LauncherSettings.Favorites._ID, item.id);
+            item.updateValuesWithCoordinates(values[i], item.cellX, item.cellY);
+            sVacancyIndex.update(item);
+        }
+
+        Runnable r = new Runnable() {
+            public void run() {
+                if (values.length > 0) {
+                    final int inserted = cr.bulkInsert(notify
+                            ? LauncherSettings.Favorites.CONTENT_URI
+                            : LauncherSettings.Favorites.CONTENT_URI_NO_NOTIFICATION, values);
+                    if (inserted == values.length) {
+                        for (ItemInfo item : batch) {
+                            addItemToModel(item, "addItemsToDatabase");
                         }
-                        break;
-                    case LauncherSettings.Favorites.ITEM_TYPE_APPWIDGET:
-                        sAppWidgets.add((LauncherAppWidgetInfo) item);
-                        break;
+                    } else {
+                        // The provider rolled the batch back, free the cells marked above
+                        Log.w(TAG, "addItemsToDatabase: inserted " + inserted + " of "
+                                + values.length + " items, dropping the batch");
+                        for (ItemInfo item : batch) {
+                            sVacancyIndex.remove(item.id);
+                        }
+                    }
+                }
+                if (onDone != null) {
+                    onDone.run();
                 }
             }
         };
@@ -473,6 +609,33 @@ public class LauncherModel extends BroadcastReceiver {
         }
     }
 
+    /**
+     * Adds a newly inserted item to the lists of the model. Runs on the worker thread.
+     */
+    private static void addItemToModel(ItemInfo item, String callingFunction) {
+        if (sItemsIdMap.containsKey(item.id)) {
+            // we should not be adding new items in the db with the same id
+            throw new RuntimeException("Error: ItemInfo id (" + item.id + ") passed to " +
+                callingFunction + " already exists." + item.toString());
+        }
+        sItemsIdMap.put(item.id, item);
+        switch (item.itemType) {
+            case LauncherSettings.Favorites.ITEM_TYPE_FOLDER:
+                sFolders.put(item.id, (FolderInfo) item);
+                // Fall through
+            case LauncherSettings.Favorites.ITEM_TYPE_APPLICATION:
+            case LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT:
+                if (item.container == LauncherSettings.Favorites.CONTAINER_DESKTOP ||
+                        item.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
+                    sWorkspaceItems.add(item);
+                }
+                break;
+            case LauncherSettings.Favorites.ITEM_TYPE_APPWIDGET:
+                sAppWidgets.add((LauncherAppWidgetInfo) item);
+                break;
+        }
+    }
+
     /**
      * Creates a new unique child id, for a given cell span across all layouts.
      */
@@ -497,6 +660,7 @@ public class LauncherModel extends BroadcastReceiver {
     static void updateWorkspaceLayoutCells(int shortAxisCellCount, int longAxisCellCount) {
         mCellCountX = shortAxisCellCount;
         mCellCountY = longAxisCellCount;
+        sVacancyIndex.setGridSize(shortAxisCellCount, longAxisCellCount);
     }
 
     /**
@@ -507,6 +671,7 @@ public class LauncherModel extends BroadcastReceiver {
     static void deleteItemFromDatabase(Context context, final ItemInfo item) {
         final ContentResolver cr = context.getContentResolver();
         final Uri uriToDelete = LauncherSettings.Favorites.getContentUri(item.id, false);
+        sVacancyIndex.remove(item.id);
         Runnable r = new Runnable() {
             public void run() {
                 cr.delete(uriToDelete, null, null);
@@ -539,6 +704,7 @@ public class LauncherModel extends BroadcastReceiver {
      */
     static void deleteFolderContentsFromDatabase(Context context, final FolderInfo info) {
         final ContentResolver cr = context.getContentResolver();
+        sVacancyIndex.remove(info.id);
 
         Runnable r = new Runnable() {
             public void run() {
@@ -999,6 +1165,8 @@ public class LauncherModel extends BroadcastReceiver {
                     Log.e(TAG, "Error loading shortcut into hotseat " + item
                         + " into position (" + item.screen + ":" + item.cellX + "," + item.cellY
                         + ") occupied by " + occupied[Launcher.SCREEN_COUNT][item.screen][0]);
+                    EventJournal.add(EventJournal.TYPE_DB_REPAIR, "Skipped overlapping item: id="
+                            + item.id + " in hotseat position " + item.screen);
                     return false;
                 } else {
                     occupied[Launcher.SCREEN_COUNT][item.screen][0] = item;
@@ -1018,6 +1186,8 @@ public class LauncherModel extends BroadcastReceiver {
                             + x + "," + y
                             + ") occupied by "
                             + occupied[containerIndex][x][y]);
+                        EventJournal.add(EventJournal.TYPE_DB_REPAIR, "Skipped overlapping item: id="
+                                + item.id + " at " + item.screen + ":" + x + "," + y);
                         return false;
                     }
                 }
@@ -1032,7 +1202,7 @@ public class LauncherModel extends BroadcastReceiver {
         }
 
         private void loadWorkspace() {
-            final long t = DEBUG_LOADERS ? SystemClock.uptimeMillis() : 0;
+            final long t = SystemClock.uptimeMillis();
 
             final Context context = mContext;
             final ContentResolver contentResolver = context.getContentResolver();
@@ -1045,6 +1215,7 @@ public class LauncherModel extends BroadcastReceiver {
             sFolders.clear();
             sItemsIdMap.clear();
             sDbIconCache.clear();
+            sVacancyIndex.clear();
 
             final ArrayList<Long> itemsToRemove = new ArrayList<Long>();
 
@@ -1147,6 +1318,7 @@ public class LauncherModel extends BroadcastReceiver {
                                     break;
                                 }
                                 sItemsIdMap.put(info.id, info);
+                                sVacancyIndex.update(info);
 
                                 // now that we've loaded everthing re-save it with the
                                 // icon in case it disappears somehow.
@@ -1158,6 +1330,8 @@ public class LauncherModel extends BroadcastReceiver {
                                 // Delete it.
                                 id = c.getLong(idIndex);
                                 Log.e(TAG, "Error loading shortcut " + id + ", removing it");
+                                EventJournal.add(EventJournal.TYPE_DELETE,
+                                        "Removed shortcut that failed to load: id=" + id);
                                 contentResolver.delete(LauncherSettings.Favorites.getContentUri(
                                             id, false), null, null);
                             }
@@ -1188,6 +1362,7 @@ public class LauncherModel extends BroadcastReceiver {
 
                             sItemsIdMap.put(folderInfo.id, folderInfo);
                             sFolders.put(folderInfo.id, folderInfo);
+                            sVacancyIndex.update(folderInfo);
                             break;
 
                         case LauncherSettings.Favorites.ITEM_TYPE_APPWIDGET:
@@ -1203,7 +1378,7 @@ public class LauncherModel extends BroadcastReceiver {
                                 String log = "Deleting widget that isn't installed anymore: id="
                                     + id + " appWidgetId=" + appWidgetId;
                                 Log.e(TAG, log); 
-                                Launcher.sDumpLogs.add(log);
+                                EventJournal.add(EventJournal.TYPE_DELETE, log);
                                 itemsToRemove.add(id);
                             } else {
                                 appWidgetInfo = new LauncherAppWidgetInfo(appWidgetId);
@@ -1229,6 +1404,7 @@ public class LauncherModel extends BroadcastReceiver {
                                 }
                                 sItemsIdMap.put(appWidgetInfo.id, appWidgetInfo);
                                 sAppWidgets.add(appWidgetInfo);
+                                sVacancyIndex.update(appWidgetInfo);
                             }
                             break;
                         }
@@ -1254,10 +1430,17 @@ public class LauncherModel extends BroadcastReceiver {
                                 null, null);
                     } catch (RemoteException e) {
                         Log.w(TAG, "Could not remove id = " + id);
+                        EventJournal.add(EventJournal.TYPE_DB_REPAIR,
+                                "Could not remove dead item: id=" + id);
                     }
                 }
             }
 
+            sVacancyIndex.setLoaded();
+            EventJournal.add(EventJournal.TYPE_LOAD, "Loaded workspace: " + sItemsIdMap.size()
+                    + " items, " + itemsToRemove.size() + " removed, in "
+                    + (SystemClock.uptimeMillis() - t) + "ms");
+
             if (DEBUG_LOADERS) {
                 Log.d(TAG, "loaded workspace in " + (SystemClock.uptimeMillis()-t) + "ms");
                 Log.d(TAG, "workspace layout: ");
@@ -1359,6 +1542,13 @@ public class LauncherModel extends BroadcastReceiver {
                     });
                 }
             }
+            // The current screen is complete once its widgets are bound
+            mHandler.post(new Runnable() {
+                public void run() {
+                    EventJournal.add(EventJournal.TYPE_BIND, "Bound current screen in "
+                            + (SystemClock.uptimeMillis() - t) + "ms");
+                }
+            });
             // once for the other screens
             for (int i=0; i<N; i++) {
                 final LauncherAppWidgetInfo widget = sAppWidgets.get(i);
@@ -1385,6 +1575,8 @@ public class LauncherModel extends BroadcastReceiver {
             // If we're profiling, this is the last thing in the queue.
             mHandler.post(new Runnable() {
                 public void run() {
+                    EventJournal.add(EventJournal.TYPE_BIND, "Bound workspace in "
+                            + (SystemClock.uptimeMillis() - t) + "ms");
                     if (DEBUG_LOADERS) {
                         Log.d(TAG, "bound workspace in "
                             + (SystemClock.uptimeMillis()-t) + "ms");
@@ -1621,6 +1813,8 @@ public class LauncherModel extends BroadcastReceiver {
 
             final String[] packages = mPackages;
             final int N = packages.length;
+            EventJournal.add(EventJournal.TYPE_PACKAGE, "Package op " + mOp + ": "
+                    + Arrays.toString(packages));
             switch (mOp) {
                 case OP_ADD:
                     for (int i=0; i<N; i++) {
@@ -2168,24 +2362,7 @@ public class LauncherModel extends BroadcastReceiver {
     private void reorderApplist(ArrayList<ApplicationInfo> list,PackageManager packageManager) {
         final long sortTime = DEBUG_LOADERS_REORDER ? SystemClock.uptimeMillis() : 0;
                         
-        if (AllAppsList.mTopPackages == null || AllAppsList.mTopPackages.isEmpty()) {
-        	return ;
-        }                
-        
-        ArrayList<ApplicationInfo> appsClone = ( ArrayList<ApplicationInfo>)(list.clone());
-      
-        for (AllAppsList.TopPackage tp : AllAppsList.mTopPackages) {
-        	
-        	for (ApplicationInfo ri : appsClone) {
-        		if (ri.componentName.getPackageName().equals(tp.mPackageName) 
-        				&& ri.componentName.getClassName().equals(tp.mClassName)) {
-        			list.remove(ri);
-        			list.add(Math.min(Math.max(tp.mOrder, 0), list.size()), ri);
-        			
-        			break;
-        		}
-        	}                	                
-        }                                 
+        AllAppsList.placeTopPackages(list);
         
         if (DEBUG_LOADERS_REORDER) {
         	LauncherLog.d(TAG, "sort and reorder took "
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+/**
+ * Releases the launcher caches when the system runs low on memory.
+ *
+ * Each cache registers with the tier from which it may be evicted. On a trim callback the
+ * governor maps the trim level to a tier, evicts every cache registered at or below it, and logs
+ * how much memory the eviction reclaimed. While the launcher is in the foreground only the
+ * running tier is released, since anything else may be on screen. Caches whose entries are also
+ * referenced from outside, such as the icon cache, only report what they dropped: that memory is
+ * freed once nothing else holds on to it, which the governor cannot tell. All calls are made on
+ * the UI thread.
+ */
+class MemoryGovernor {
+    static final String TAG = "Launcher.MemoryGovernor";
+
+    /** Nothing to release. */
+    static final int TIER_NONE = 0;
+    /** Release scratch caches which are never on screen, even in the foreground. */
+    static final int TIER_RUNNING = 1;
+    /** Release what the user cannot see once the UI is hidden, which is cheap to rebuild. */
+    static final int TIER_HIDDEN = 2;
+    /** Also release caches that are slow to rebuild. */
+    static final int TIER_CACHES = 3;
+    /** Release everything that can be released. */
+    static final int TIER_ALL = 4;
+
+    interface Cache {
+        /** Returns the number of entries held. */
+        int getEntryCount();
+
+        /** Returns an estimate of the memory held, in bytes. */
+        long getSizeEstimate();
+
+        /** Releases entries; tier is at least the one the cache registered with. */
+        void evict(int tier);
+    }
+
+    private static final class Entry {
+        final String name;
+        final int tier;
+        final boolean shared;
+        final Cache cache;
+
+        // Counters reported by dump()
+        long reclaimedBytes;
+        long droppedBytes;
+        int evictions;
+
+        Entry(String name, int tier, boolean shared, Cache cache) {
+            this.name = name;
+            this.tier = tier;
+            this.shared = shared;
+            this.cache = cache;
+        }
+    }
+
+    private final ArrayList<Entry> mEntries = new ArrayList<Entry>();
+    private int mLastLevel = -1;
+
+    /**
+     * Adds a cache, evicted on trims of the given tier or more.
+     *
+     * @param shared whether the cached entries may still be referenced from outside the cache,
+     *        in which case evicting them does not necessarily free their memory.
+     */
+    void register(String name, int tier, boolean shared, Cache cache) {
+        mEntries.add(new Entry(name, tier, shared, cache));
+    }
+
+    /**
+     * Removes a cache added with {@link #register}, e.g. when its owner is destroyed.
+     */
+    void unregister(Cache cache) {
+        for (int i = mEntries.size() - 1; i >= 0; i--) {
+            if (mEntries.get(i).cache == cache) {
+                mEntries.remove(i);
+            }
+        }
+    }
+
+    static int tierForLevel(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            return TIER_ALL;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            return TIER_CACHES;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            return TIER_HIDDEN;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            // Still in the foreground, RUNNING_CRITICAL included
+            return TIER_RUNNING;
+        }
+        return TIER_NONE;
+    }
+
+    void onTrimMemory(int level) {
+        mLastLevel = level;
+        final int tier = tierForLevel(level);
+        if (tier == TIER_NONE) {
+            return;
+        }
+        long total = 0;
+        long totalDropped = 0;
+        final StringBuilder sb = new StringBuilder();
+        final int count = mEntries.size();
+        for (int i = 0; i < count; i++) {
+            final Entry entry = mEntries.get(i);
+            if (entry.tier > tier) {
+                continue;
+            }
+            final long before = entry.cache.getSizeEstimate();
+            entry.cache.evict(tier);
+            final long released = Math.max(0, before - entry.cache.getSizeEstimate());
+            entry.evictions++;
+            sb.append(' ').append(entry.name).append('=').append(released / 1024).append("KB");
+            if (entry.shared) {
+                entry.droppedBytes += released;
+                totalDropped += released;
+                sb.append(" dropped");
+            } else {
+                entry.reclaimedBytes += released;
+                total += released;
+            }
+        }
+        Log.i(TAG, "onTrimMemory: level=" + level + " tier=" + tier + " reclaimed="
+                + (total / 1024) + "KB dropped=" + (totalDropped / 1024) + "KB" + sb);
+    }
+
+    /**
+     * Returns the memory currently held by all the caches, in bytes.
+     */
+    long getSizeEstimate() {
+        long bytes = 0;
+        final int count = mEntries.size();
+        for (int i = 0; i < count; i++) {
+            bytes += mEntries.get(i).cache.getSizeEstimate();
+        }
+        return bytes;
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Memory governor: size=" + (getSizeEstimate() / 1024) + "KB"
+                + " lastTrimLevel=" + mLastLevel);
+        final int count = mEntries.size();
+        for (int i = 0; i < count; i++) {
+            final Entry entry = mEntries.get(i);
+            writer.println(prefix + "  " + entry.name + ": tier=" + entry.tier
+                    + " entries=" + entry.cache.getEntryCount()
+                    + " size=" + (entry.cache.getSizeEstimate() / 1024) + "KB"
+                    + " evictions=" + entry.evictions
+                    + (entry.shared ? " dropped=" + (entry.droppedBytes / 1024)
+                            : " reclaimed=" + (entry.reclaimedBytes / 1024)) + "KB");
+        }
+    }
+}
@@ -3,16 +3,20 @@ package com.android.launcher3;
 import java.util.ArrayList;
 import java.util.List;
 
-import android.animation.Animator;
-import android.animation.Animator.AnimatorListener;
-import android.animation.AnimatorListenerAdapter;
 import android.animation.ValueAnimator;
+import android.animation.ValueAnimator.AnimatorUpdateListener;
 import android.util.AndroidRuntimeException;
+import android.view.animation.AnimationUtils;
 
 /**
  * 	A helper class of ValueAnimator, you can treat this class as a AnimatorSet,
  * the difference between Movie and AnimatorSet is that the Movie support for more flexible
  * arrangement of ValueAnimator, especially circulatable animation. 
+ * <p>
+ * The actors are never started on their own: the movie lays them out once on a timeline and
+ * seeks them on every frame of its {@link Clock}, which advances all the running movies from a
+ * single pulse. Nothing is allocated per frame, and a movie which was cut can be played again
+ * without being laid out again.
  * @author yangbin.li
  */
 public class Movie {
@@ -30,81 +34,90 @@ public class Movie {
 	private long mDuration;
 	private int mRepeatTime;
 	
+	private final Clock mClock;
+	// The timeline, laid out by initEveryActor() and reused by every run
+	private Actor[] mOrder;
+	private long[] mOffsets;
+	private long[] mDelays;
+	private long[] mDurations;
+	private Partner[] mPartners;
+	private long mCycleDuration;
+	// Where the movie is in its timeline
+	private long mStartTime;
+	private long mCycleStart;
+	private int mCurrentIndex;
+	
 	public Movie() {
 		this(DEFAULT_LEADER_DURATION);
 	}
 	
 	public Movie(long duration) {
+		this(duration, getFrameClock());
+	}
+	
+	/**
+	 * @param clock the clock driving the movie, such as a {@link ManualClock} to step it
+	 * deterministically.
+	 */
+	public Movie(long duration, Clock clock) {
 		mDuration = duration;
+		mClock = clock;
 	}
 	
+	/**
+	 * Lays out the actors one after the other from the first one, each for its start delay plus
+	 * its share of the movie duration, as if every actor were started when the one before it
+	 * ends. Every partner starts with the first actor it plays with and lasts its own start
+	 * delay plus the total duration of the actors it plays with.
+	 */
 	private void initEveryActor() {
-		final int count = mActors.size();
-		AnimatorListener partnerlistener = new AnimatorListenerAdapter() {
-			@Override
-			public void onAnimationEnd(Animator animation) {
-				if (mListener != null) {
-					mListener.onOneActorOver((ValueAnimator) animation, mRepeatTime);
-				}
-			}
-		};
+		final ArrayList<Actor> order = new ArrayList<Actor>();
+		Actor current = mFirstActor;
+		do {
+			order.add(current);
+			current = current.next;
+		} while (current != mFirstActor);
+
+		final int count = order.size();
+		final ArrayList<Partner> partners = new ArrayList<Partner>();
+		mOrder = order.toArray(new Actor[count]);
+		mOffsets = new long[count];
+		mDelays = new long[count];
+		mDurations = new long[count];
+		long offset = 0;
 		for (int i = 0; i < count; i++) {
-			Actor actor = mActors.get(i);
-			ValueAnimator role = actor.role;
-			long duration = (long) (actor.weight * mDuration);
-			role.setDuration(duration);
-			AnimatorListener listener = new AnimatorListenerAdapter() {
-				
-				@Override
-				public void onAnimationStart(Animator animation) {
-					if (mFirstActor.equals(animation)) {
-						mRepeatTime++;
-						if (mListener != null) {
-							mListener.onMovieAgain(mRepeatTime);
-						}
+			final Actor actor = mOrder[i];
+			final long duration = (long) (actor.weight * mDuration);
+			actor.role.setDuration(duration);
+			mOffsets[i] = offset;
+			mDelays[i] = actor.role.getStartDelay();
+			mDurations[i] = duration;
+
+			final ArrayList<ValueAnimator> actorPartners = actor.partners;
+			final int partnerCount = actorPartners == null ? 0 : actorPartners.size();
+			for (int j = 0; j < partnerCount; j++) {
+				final ValueAnimator animator = actorPartners.get(j);
+				Partner partner = null;
+				for (int k = 0; k < partners.size(); k++) {
+					if (partners.get(k).animator == animator) {
+						partner = partners.get(k);
+						break;
 					}
 				}
-				@Override
-				public void onAnimationEnd(Animator animation) {
-					if (mRunning) {
-						Actor pastOne = mCurrentActor;
-						mCurrentActor = pastOne.next;
-						mCurrentActor.start();
-					} else {
-						return;
-					}
-					if (mListener != null) {
-						mListener.onOneActorOver((ValueAnimator) animation, mRepeatTime);
-					}
-				}
-			};
-			role.removeListener(listener);
-			role.addListener(listener);
-			final ArrayList<ValueAnimator> partners = actor.partners;
-			if (partners == null || partners.size() == 0) {
-				continue;
-			} else {
-				for (int j = 0; j < partners.size(); j++) {
-					ValueAnimator partner = partners.get(j);
-					long durationPartner = 0;
-					final Actor first = mFirstActor;
-					final ArrayList<ValueAnimator> firstPartners = first.partners;
-					if (firstPartners != null && firstPartners.contains(partner)) {
-						durationPartner += first.role.getDuration();
-					}
-					Actor current = first.next;
-					while (current != first) {
-						final ArrayList<ValueAnimator> currentPartners = current.partners;
-						if (currentPartners != null && currentPartners.contains(partner)) {
-							durationPartner += current.role.getDuration();
-						}
-						current = current.next;
-					}
-					partner.setDuration(durationPartner);
-					partner.removeListener(partnerlistener);
-					partner.addListener(partnerlistener);
+				if (partner == null) {
+					partner = new Partner(animator, offset);
+					partners.add(partner);
 				}
+				partner.duration += duration;
 			}
+			offset += mDelays[i] + duration;
+		}
+		mCycleDuration = offset;
+		mPartners = partners.toArray(new Partner[partners.size()]);
+		for (int k = 0; k < mPartners.length; k++) {
+			final Partner partner = mPartners[k];
+			partner.animator.setDuration(partner.duration);
+			partner.delay = partner.animator.getStartDelay();
 		}
 	}
 	
@@ -156,6 +169,7 @@ public class Movie {
 			current.addPartner(actor);
 			current = current.next;
 		}
+		mWaitForPrepared = true;
 		return this;
 	}
 	
@@ -167,13 +181,13 @@ public class Movie {
 		}
 		final Actor first = mFirstActor;
 		if (first.role == specified) {
-			first.addPartner(actor);
+			mWaitForPrepared |= first.addPartner(actor);
 			return this;
 		}
 		Actor current = first.next;
 		while (current != first) {
 			if (current.role == specified) {
-				current.addPartner(actor);
+				mWaitForPrepared |= current.addPartner(actor);
 				return this;
 			} else {
 				current = current.next;
@@ -226,12 +240,101 @@ public class Movie {
 			initEveryActor();
 			mWaitForPrepared = false;
 		}
+		if (mCycleDuration <= 0) {
+			throw new IllegalStateException("Can not play a movie of duration " + mCycleDuration);
+		}
 		mRunning = true;
-		mRepeatTime = 0;
+		mRepeatTime = 1;
+		mCurrentIndex = 0;
+		mStartTime = mClock.now();
+		mCycleStart = 0;
+		for (int k = 0; k < mPartners.length; k++) {
+			mPartners[k].finished = false;
+		}
+		mClock.register(this);
 		if (mListener != null) {
 			mListener.onMovieBegin();
 		}
-		mCurrentActor.start();
+		if (mRunning && mListener != null) {
+			mListener.onMovieAgain(mRepeatTime);
+		}
+		if (mRunning) {
+			onFrame(mStartTime);
+		}
+	}
+
+	/**
+	 * Advances the timeline to the given clock time, finishing every actor and partner whose
+	 * time is over on the way, then seeks the playing ones. Actors and partners are left alone
+	 * during their start delay, like started animators are.
+	 */
+	void onFrame(long now) {
+		final long elapsed = now - mStartTime;
+		while (mRunning) {
+			final int index = mCurrentIndex;
+			final Actor actor = mOrder[index];
+			final long actorEnd = mOffsets[index] + mDelays[index] + mDurations[index];
+			if (elapsed - mCycleStart < actorEnd) {
+				break;
+			}
+			actor.role.setCurrentPlayTime(mDurations[index]);
+			final boolean lastActor = index + 1 == mOrder.length;
+			// A partner outlasting the cycle is cut at its end, it starts again with the next one
+			finishPartners(lastActor ? Long.MAX_VALUE : actorEnd);
+			if (mListener != null) {
+				mListener.onOneActorOver(actor.role, mRepeatTime);
+			}
+			if (!lastActor) {
+				mCurrentIndex = index + 1;
+			} else {
+				mCurrentIndex = 0;
+				mCycleStart += mCycleDuration;
+				mRepeatTime++;
+				for (int k = 0; k < mPartners.length; k++) {
+					mPartners[k].finished = false;
+				}
+				if (mRunning && mListener != null) {
+					mListener.onMovieAgain(mRepeatTime);
+				}
+			}
+			mCurrentActor = mOrder[mCurrentIndex];
+		}
+		if (!mRunning) {
+			return;
+		}
+
+		final long cycleTime = elapsed - mCycleStart;
+		finishPartners(cycleTime);
+		if (!mRunning) {
+			return;
+		}
+		final long actorTime = cycleTime - mOffsets[mCurrentIndex] - mDelays[mCurrentIndex];
+		if (actorTime >= 0) {
+			mOrder[mCurrentIndex].role.setCurrentPlayTime(actorTime);
+		}
+		for (int k = 0; k < mPartners.length; k++) {
+			final Partner partner = mPartners[k];
+			final long partnerTime = cycleTime - partner.offset - partner.delay;
+			if (!partner.finished && partnerTime >= 0) {
+				partner.animator.setCurrentPlayTime(partnerTime);
+			}
+		}
+	}
+
+	/**
+	 * Finishes the partners of this cycle which end at or before the given cycle time.
+	 */
+	private void finishPartners(long cycleTime) {
+		for (int k = 0; k < mPartners.length && mRunning; k++) {
+			final Partner partner = mPartners[k];
+			if (!partner.finished && partner.offset + partner.delay + partner.duration <= cycleTime) {
+				partner.finished = true;
+				partner.animator.setCurrentPlayTime(partner.duration);
+				if (mListener != null) {
+					mListener.onOneActorOver(partner.animator, mRepeatTime);
+				}
+			}
+		}
 	}
 
 	public void setMovieListener(MovieListener listener) {
@@ -246,21 +349,25 @@ public class Movie {
             mListener.onMovieOver();
         }
 		mRunning = false;
-		for (int i = 0; i < mActors.size(); i++) {
-			Actor actor = mActors.get(i);
-			if (actor != null) {
-				actor.stop();
-			}
-		}
+		mClock.unregister(this);
 	}
 	
+	/**
+	 * Removes every actor, the movie can then be cast again
+	 */
 	public final void reset() {
 		if (mActors == null) {
 			return;
 		} else {
+			if (mRunning) {
+				cut();
+			}
 			mActors.clear();
 			mFirstActor = null;
 			mCurrentActor = null;
+			mOrder = null;
+			mPartners = null;
+			mCycleDuration = 0;
 		}
 	}
 	
@@ -315,38 +422,6 @@ public class Movie {
 			}
 		}
 		
-		void start() {
-			if (role != null) {
-				role.start();
-			} else {
-				throw new IllegalStateException("Actor start incorrectly");
-			}
-			if (partners != null) {
-				for (int i = 0; i < partners.size(); i++) {
-					ValueAnimator partner = partners.get(i);
-					if(partner != null && !partner.isRunning() && !partner.isStarted()) {
-						partner.start();
-					}
-				}
-			}
-		}
-		
-		void stop() {
-			if (role != null) {
-				role.cancel();
-			} else {
-				throw new IllegalStateException("Actor stop incorrectly");
-			}
-			if (partners != null) {
-				for (int j = 0; j < partners.size(); j++) {
-					ValueAnimator partner = partners.get(j);
-					if (partner != null) {
-						partner.cancel();
-					}
-				}
-			}
-		}
-		
 		@Override
 		public boolean equals(Object o) {
 			if (o instanceof ValueAnimator) {
@@ -362,6 +437,153 @@ public class Movie {
 		}
 	}
 	
+	/**
+	 * A partner on the timeline, it plays along a run of actors
+	 */
+	static class Partner {
+		final ValueAnimator animator;
+		final long offset;
+		long delay;
+		long duration;
+		/** Whether the partner already ended in the current cycle. */
+		boolean finished;
+		
+		Partner(ValueAnimator animator, long offset) {
+			this.animator = animator;
+			this.offset = offset;
+		}
+	}
+	
+	/**
+	 * The source of time of movies. Every running movie of a clock is advanced from the single
+	 * {@link #tick} of the clock.
+	 */
+	public static abstract class Clock {
+		private final ArrayList<Movie> mMovies = new ArrayList<Movie>();
+		
+		/**
+		 * @return the current time in ms
+		 */
+		public abstract long now();
+		
+		/**
+		 * Called when the first movie starts; {@link #tick} must be called on every frame until
+		 * {@link #onStop()}.
+		 */
+		protected abstract void onStart();
+		
+		/**
+		 * Called when the last movie stops
+		 */
+		protected abstract void onStop();
+		
+		/**
+		 * Advances every running movie to the given time
+		 */
+		protected final void tick(long now) {
+			// Movies may be cut by the listeners of the ones before them
+			for (int i = mMovies.size() - 1; i >= 0; i--) {
+				if (i < mMovies.size()) {
+					mMovies.get(i).onFrame(now);
+				}
+			}
+		}
+		
+		final void register(Movie movie) {
+			if (!mMovies.contains(movie)) {
+				mMovies.add(movie);
+				if (mMovies.size() == 1) {
+					onStart();
+				}
+			}
+		}
+		
+		final void unregister(Movie movie) {
+			if (mMovies.remove(movie) && mMovies.isEmpty()) {
+				onStop();
+			}
+		}
+	}
+	
+	/**
+	 * The clock of all movies by default, it ticks on animation frames
+	 */
+	private static final class FrameClock extends Clock {
+		private final ValueAnimator mTicker = ValueAnimator.ofFloat(0f, 1f);
+		
+		FrameClock() {
+			mTicker.setDuration(DEFAULT_LEADER_DURATION);
+			mTicker.setRepeatCount(ValueAnimator.INFINITE);
+			mTicker.addUpdateListener(new AnimatorUpdateListener() {
+				@Override
+				public void onAnimationUpdate(ValueAnimator animation) {
+					tick(now());
+				}
+			});
+		}
+		
+		@Override
+		public long now() {
+			return AnimationUtils.currentAnimationTimeMillis();
+		}
+		
+		@Override
+		protected void onStart() {
+			mTicker.start();
+		}
+		
+		@Override
+		protected void onStop() {
+			mTicker.cancel();
+		}
+	}
+	
+	private static FrameClock sFrameClock;
+	
+	/**
+	 * @return the clock shared by the movies which are not given one, must be used from the UI
+	 * thread
+	 */
+	public static Clock getFrameClock() {
+		if (sFrameClock == null) {
+			sFrameClock = new FrameClock();
+		}
+		return sFrameClock;
+	}
+	
+	/**
+	 * A clock which only moves when told to, so that movies can be stepped deterministically
+	 */
+	public static class ManualClock extends Clock {
+		private long mNow;
+		private boolean mTicking;
+		
+		@Override
+		public long now() {
+			return mNow;
+		}
+		
+		@Override
+		protected void onStart() {
+			mTicking = true;
+		}
+		
+		@Override
+		protected void onStop() {
+			mTicking = false;
+		}
+		
+		/**
+		 * Moves the time forward and advances the running movies
+		 */
+		public void advance(long ms) {
+			mNow += ms;
+			if (mTicking) {
+				tick(mNow);
+			}
+		}
+	}
+	
 	/**
 	 * A listener interface listen to the movie playing process
 	 * @author yangbin.li
@@ -144,6 +144,9 @@ public abstract class PagedView extends ViewGroup implements SlideDivider.onDotD
     protected int mUnboundedScrollX;
     protected int[] mTempVisiblePagesRange = new int[3];
 
+    // Frame time instrumentation, shared by all instances of the same class
+    protected final FrameStats mFrameStats = FrameStats.get(getClass().getSimpleName());
+
     // mOverScrollX is equal to mScrollX when we're within the normal scroll range. Otherwise
     // it is equal to the scaled overscroll position. We use a separate value so as to prevent
     // the screens from continuing to translate beyond the normal bounds.
@@ -363,6 +366,14 @@ public abstract class PagedView extends ViewGroup implements SlideDivider.onDotD
         return mIsPageMoving;
     }
 
+    /**
+     * Returns whether the frame being drawn belongs to a scroll, fling or other animation, as
+     * opposed to an idle redraw. Only such frames count towards the frame stats.
+     */
+    protected boolean isAnimatingFrames() {
+        return !mScroller.isFinished() || isPageMoving();
+    }
+
     // a method that subclasses can override to add behavior
     protected void onPageBeginMoving() {
 //        showScrollingIndicator(false);
@@ -485,7 +496,13 @@ public abstract class PagedView extends ViewGroup implements SlideDivider.onDotD
 
 	@Override
     public void computeScroll() {
+        final long start = FrameStats.begin();
+        // Checked first, so the step which finishes the scroll still counts
+        final boolean animating = isAnimatingFrames();
         computeScrollHelper();
+        if (animating) {
+            mFrameStats.end(FrameStats.COMPUTE_SCROLL, start);
+        }
     }
 
     @Override
@@ -810,6 +827,10 @@ public abstract class PagedView extends ViewGroup implements SlideDivider.onDotD
     }
     @Override
     protected void dispatchDraw(Canvas canvas) {
+        final long drawStart = FrameStats.begin();
+        // Idle redraws are left out of the frame and section times alike
+        final boolean animating = isAnimatingFrames();
+        mFrameStats.onFrame(drawStart, animating);
         int halfScreenSize = getMeasuredWidth() / 2;
         // mOverScrollX is equal to mScrollX when we're within the normal scroll range. Otherwise
         // it is equal to the scaled overscroll position.
@@ -817,7 +838,11 @@ public abstract class PagedView extends ViewGroup implements SlideDivider.onDotD
         onDrawBeforeDispatching(canvas, screenCenter);
         final int pageCount = getChildCount();
         if ((screenCenter != mLastScreenCenter || mForceScreenScrolled) && pageCount > 0 && !isPreviewsState()) {
+            final long scrolledStart = FrameStats.begin();
             screenScrolled(screenCenter);
+            if (animating) {
+                mFrameStats.end(FrameStats.SCREEN_SCROLLED, scrolledStart);
+            }
             mLastScreenCenter = screenCenter;
             mForceScreenScrolled = false;
         }
@@ -861,6 +886,9 @@ public abstract class PagedView extends ViewGroup implements SlideDivider.onDotD
 //                canvas.restore();
 //            }
         }
+        if (animating) {
+            mFrameStats.end(FrameStats.DISPATCH_DRAW, drawStart);
+        }
     }
     
     /**
@@ -20,6 +20,7 @@ import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
 import android.animation.AnimatorSet;
 import android.animation.ObjectAnimator;
+import android.animation.ValueAnimator;
 import android.content.Context;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
@@ -54,6 +55,17 @@ public class SearchDropTargetBar extends FrameLayout implements DragController.D
     private int mBarHeight;
     private boolean mDeferOnDragEnd = false;
 
+    private DragController mDragController;
+    // The drop targets slide with the bar, so the cached hit rects go stale on every frame
+    private final ValueAnimator.AnimatorUpdateListener mInvalidateDropTargets =
+            new ValueAnimator.AnimatorUpdateListener() {
+        public void onAnimationUpdate(ValueAnimator animation) {
+            if (mDragController != null) {
+                mDragController.invalidateDropTargetGeometry();
+            }
+        }
+    };
+
     private Drawable mPreviousBackground;
 
     public SearchDropTargetBar(Context context, AttributeSet attrs) {
@@ -65,6 +77,7 @@ public class SearchDropTargetBar extends FrameLayout implements DragController.D
     }
 
     public void setup(Launcher launcher, DragController dragController) {
+        mDragController = dragController;
         dragController.addDragListener(this);
         dragController.addDragListener(mInfoDropTarget);
 //        dragController.addDragListener(mDeleteDropTarget);
@@ -101,7 +114,9 @@ public class SearchDropTargetBar extends FrameLayout implements DragController.D
         AnimatorSet.Builder fadeInAnimators = mDropTargetBarFadeInAnim.play(fadeInAlphaAnim);
         if (enableDropDownDropTargets) {
             mDropTargetBar.setTranslationY(-mBarHeight);
-            fadeInAnimators.with(ObjectAnimator.ofFloat(mDropTargetBar, "translationY", 0f));
+            ObjectAnimator translateIn = ObjectAnimator.ofFloat(mDropTargetBar, "translationY", 0f);
+            translateIn.addUpdateListener(mInvalidateDropTargets);
+            fadeInAnimators.with(translateIn);
         }
         mDropTargetBarFadeInAnim.setDuration(sTransitionInDuration);
         mDropTargetBarFadeInAnim.addListener(new AnimatorListenerAdapter() {
@@ -115,8 +130,10 @@ public class SearchDropTargetBar extends FrameLayout implements DragController.D
         mDropTargetBarFadeOutAnim = new AnimatorSet();
         AnimatorSet.Builder fadeOutAnimators = mDropTargetBarFadeOutAnim.play(fadeOutAlphaAnim);
         if (enableDropDownDropTargets) {
-            fadeOutAnimators.with(ObjectAnimator.ofFloat(mDropTargetBar, "translationY",
-                    -mBarHeight));
+            ObjectAnimator translateOut = ObjectAnimator.ofFloat(mDropTargetBar, "translationY",
+                    -mBarHeight);
+            translateOut.addUpdateListener(mInvalidateDropTargets);
+            fadeOutAnimators.with(translateOut);
         }
         mDropTargetBarFadeOutAnim.setDuration(sTransitionOutDuration);
         mDropTargetBarFadeOutAnim.addListener(new AnimatorListenerAdapter() {
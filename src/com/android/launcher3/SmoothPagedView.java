@@ -175,6 +175,8 @@ public abstract class SmoothPagedView extends PagedView {
         if (mScrollMode == X_LARGE_MODE) {
             super.computeScroll();
         } else {
+            final long start = FrameStats.begin();
+            final boolean animating = isAnimatingFrames();
             boolean scrollComputed = computeScrollHelper();
             
             if (!scrollComputed && mTouchState == TOUCH_STATE_SCROLLING ) {
@@ -190,6 +192,9 @@ public abstract class SmoothPagedView extends PagedView {
                     invalidate();
                 }
             }
+            if (animating) {
+                mFrameStats.end(FrameStats.COMPUTE_SCROLL, start);
+            }
         }
     }
 }
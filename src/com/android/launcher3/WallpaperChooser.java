@@ -26,6 +26,8 @@ import android.os.Bundle;
 public class WallpaperChooser extends Activity {
     private static final String TAG = "WallpaperChooser";
 
+    private final MemoryGovernor mMemoryGovernor = new MemoryGovernor();
+
     @Override
     public void onCreate(Bundle icicle) {
         super.onCreate(icicle);
@@ -47,4 +49,14 @@ public class WallpaperChooser extends Activity {
             fragment.show(getFragmentManager(), "dialog");
         }
     }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        mMemoryGovernor.onTrimMemory(level);
+    }
+
+    MemoryGovernor getMemoryGovernor() {
+        return mMemoryGovernor;
+    }
 }
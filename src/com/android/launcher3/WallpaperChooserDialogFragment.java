@@ -26,10 +26,15 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.util.DisplayMetrics;
 import android.util.Log;
+import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.View.OnClickListener;
@@ -53,13 +58,53 @@ public class WallpaperChooserDialogFragment extends DialogFragment implements
     private static final String EMBEDDED_KEY = "com.android.launcher3."
             + "WallpaperChooserDialogFragment.EMBEDDED_KEY";
 
+    /**
+     * Previews decoded at the display size, kept while the user scrolls back and forth. The
+     * cache holds this many display-sized bitmaps worth of bytes.
+     */
+    private static final int MAX_CACHED_PREVIEWS = 3;
+    private static final int THUMBNAIL_CACHE_BYTES = 1024 * 1024;
+
     private boolean mEmbedded;
     private Bitmap mBitmap = null;
 
+    /** Decoded previews and thumbnails, by drawable resource. Previews are sized in onCreate. */
+    private LruCache<Integer, Bitmap> mPreviews;
+    private final LruCache<Integer, Bitmap> mThumbnails =
+            new LruCache<Integer, Bitmap>(THUMBNAIL_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(Integer resId, Bitmap b) {
+            return b.getRowBytes() * b.getHeight();
+        }
+    };
+
     private ArrayList<Integer> mThumbs;
     private ArrayList<Integer> mImages;
     private WallpaperLoader mLoader;
     private WallpaperDrawable mWallpaperDrawable = new WallpaperDrawable();
+    private MemoryGovernor mMemoryGovernor;
+
+    /** Lets the chooser activity drop the previews the user is not looking at. */
+    private final MemoryGovernor.Cache mPreviewCache = new MemoryGovernor.Cache() {
+        public int getEntryCount() {
+            return mPreviews.size();
+        }
+
+        public long getSizeEstimate() {
+            // The preview on screen stays referenced after an eviction, so it is not counted
+            long bytes = 0;
+            for (Bitmap b : mPreviews.snapshot().values()) {
+                if (b != mBitmap) {
+                    bytes += b.getRowBytes() * b.getHeight();
+                }
+            }
+            return bytes;
+        }
+
+        public void evict(int tier) {
+            mPreviews.evictAll();
+        }
+    };
 
     public static WallpaperChooserDialogFragment newInstance() {
         WallpaperChooserDialogFragment fragment = new WallpaperChooserDialogFragment();
@@ -75,6 +120,19 @@ public class WallpaperChooserDialogFragment extends DialogFragment implements
         } else {
             mEmbedded = isInLayout();
         }
+        final DisplayMetrics metrics = getResources().getDisplayMetrics();
+        mPreviews = new LruCache<Integer, Bitmap>(
+                MAX_CACHED_PREVIEWS * metrics.widthPixels * metrics.heightPixels * 4) {
+            @Override
+            protected int sizeOf(Integer resId, Bitmap b) {
+                return b.getRowBytes() * b.getHeight();
+            }
+        };
+        if (getActivity() instanceof WallpaperChooser) {
+            mMemoryGovernor = ((WallpaperChooser) getActivity()).getMemoryGovernor();
+            mMemoryGovernor.register("wallpaper previews", MemoryGovernor.TIER_HIDDEN, false,
+                    mPreviewCache);
+        }
         if (LauncherLog.DEBUG) {
             LauncherLog.d(TAG, "onCreate: savedInstanceState = " + savedInstanceState
                     + ",mEmbedded = " + mEmbedded + ",this = " + this);
@@ -100,6 +158,12 @@ public class WallpaperChooserDialogFragment extends DialogFragment implements
             mLoader.cancel(true);
             mLoader = null;
         }
+        if (mMemoryGovernor != null) {
+            mMemoryGovernor.unregister(mPreviewCache);
+            mMemoryGovernor = null;
+        }
+        mPreviews.evictAll();
+        mThumbnails.evictAll();
     }
 
     @Override
@@ -228,10 +292,43 @@ public class WallpaperChooserDialogFragment extends DialogFragment implements
     // Selection handler for the embedded Gallery view
     @Override
     public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+        // The selection moved on, the previous decode is stale
         if (mLoader != null && mLoader.getStatus() != WallpaperLoader.Status.FINISHED) {
             mLoader.cancel();
+            mLoader = null;
+        }
+        final int resId = mImages.get(position);
+        final Bitmap preview = mPreviews.get(resId);
+        if (preview != null) {
+            showPreview(preview);
+            return;
         }
-        mLoader = (WallpaperLoader) new WallpaperLoader().execute(position);
+        mLoader = (WallpaperLoader) new WallpaperLoader(resId).execute();
+    }
+
+    private void showPreview(Bitmap b) {
+        View v = getView();
+        if (v != null) {
+            mBitmap = b;
+            mWallpaperDrawable.setBitmap(b);
+            v.postInvalidate();
+        } else {
+            mBitmap = null;
+            mWallpaperDrawable.setBitmap(null);
+        }
+    }
+
+    /**
+     * Returns the largest power of two by which the image can be subsampled and still cover
+     * the target size.
+     */
+    static int computeSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth
+                && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
     }
 
     @Override
@@ -301,11 +398,19 @@ public class WallpaperChooserDialogFragment extends DialogFragment implements
             ImageView image = (ImageView) view.findViewById(R.id.wallpaper_image);
 
             int thumbRes = mThumbs.get(position);
-            image.setImageResource(thumbRes);
-            Drawable thumbDrawable = image.getDrawable();
-            if (thumbDrawable != null) {
+            Bitmap thumb = mThumbnails.get(thumbRes);
+            if (thumb == null) {
+                thumb = BitmapFactory.decodeResource(getResources(), thumbRes);
+                if (thumb != null) {
+                    mThumbnails.put(thumbRes, thumb);
+                }
+            }
+            if (thumb != null) {
+                Drawable thumbDrawable = new BitmapDrawable(getResources(), thumb);
                 thumbDrawable.setDither(true);
+                image.setImageDrawable(thumbDrawable);
             } else {
+                image.setImageDrawable(null);
                 Log.e(TAG, "Error decoding thumbnail resId=" + thumbRes + " for wallpaper #"
                         + position);
             }
@@ -314,17 +419,31 @@ public class WallpaperChooserDialogFragment extends DialogFragment implements
         }
     }
 
-    class WallpaperLoader extends AsyncTask<Integer, Void, Bitmap> {
+    /**
+     * Decodes a wallpaper at the display size: the bounds are read first, so that large images
+     * are subsampled by the decoder instead of being decoded at full resolution.
+     */
+    class WallpaperLoader extends AsyncTask<Void, Void, Bitmap> {
         BitmapFactory.Options mOptions;
+        // Read on the UI thread, the fragment may be detached while decoding
+        private final Resources mResources;
+        private final int mResId;
+        private final int mTargetWidth;
+        private final int mTargetHeight;
 
-        WallpaperLoader() {
+        WallpaperLoader(int resId) {
             mOptions = new BitmapFactory.Options();
             mOptions.inDither = false;
             mOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            mResources = getResources();
+            mResId = resId;
+            final DisplayMetrics metrics = mResources.getDisplayMetrics();
+            mTargetWidth = metrics.widthPixels;
+            mTargetHeight = metrics.heightPixels;
         }
 
         @Override
-        protected Bitmap doInBackground(Integer... params) {
+        protected Bitmap doInBackground(Void... params) {
             if (isCancelled() || !isAdded()) {
                 // If the fragment is not added(attached) to an activity, return null.
                 LauncherLog.d(TAG, "WallpaperLoader doInBackground: canceled = " + isCancelled()
@@ -332,8 +451,15 @@ public class WallpaperChooserDialogFragment extends DialogFragment implements
                 return null;
             }
             try {
-                return BitmapFactory.decodeResource(getResources(),
-                        mImages.get(params[0]), mOptions);
+                mOptions.inJustDecodeBounds = true;
+                BitmapFactory.decodeResource(mResources, mResId, mOptions);
+                mOptions.inJustDecodeBounds = false;
+                if (isCancelled() || mOptions.mCancel || mOptions.outWidth <= 0) {
+                    return null;
+                }
+                mOptions.inSampleSize = computeSampleSize(mOptions.outWidth, mOptions.outHeight,
+                        mTargetWidth, mTargetHeight);
+                return BitmapFactory.decodeResource(mResources, mResId, mOptions);
             } catch (OutOfMemoryError e) {
                 LauncherLog.w(TAG, "WallpaperLoader decode resource out of memory " + e.getMessage());
                 return null;
@@ -344,24 +470,19 @@ public class WallpaperChooserDialogFragment extends DialogFragment implements
         protected void onPostExecute(Bitmap b) {
             if (b == null) return;
 
+            mPreviews.put(mResId, b);
             if (!isCancelled() && !mOptions.mCancel) {
-                // Help the GC
-                if (mBitmap != null) {
-                    mBitmap.recycle();
-                }
-
-                View v = getView();
-                if (v != null) {
-                    mBitmap = b;
-                    mWallpaperDrawable.setBitmap(b);
-                    v.postInvalidate();
-                } else {
-                    mBitmap = null;
-                    mWallpaperDrawable.setBitmap(null);
-                }
+                showPreview(b);
                 mLoader = null;
-            } else {
-               b.recycle();
+            }
+        }
+
+        @Override
+        protected void onCancelled(Bitmap b) {
+            // Keep a preview decoded before the selection moved on, the user may come back to it,
+            // unless the fragment is gone and its caches were emptied already
+            if (b != null && isAdded()) {
+                mPreviews.put(mResId, b);
             }
         }
 
@@ -379,6 +500,8 @@ public class WallpaperChooserDialogFragment extends DialogFragment implements
         Bitmap mBitmap;
         int mIntrinsicWidth;
         int mIntrinsicHeight;
+        private final Rect mDstRect = new Rect();
+        private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
 
         /* package */void setBitmap(Bitmap bitmap) {
             mBitmap = bitmap;
@@ -393,9 +516,16 @@ public class WallpaperChooserDialogFragment extends DialogFragment implements
             if (mBitmap == null) return;
             int width = canvas.getWidth();
             int height = canvas.getHeight();
-            int x = (width - mIntrinsicWidth) / 2;
-            int y = (height - mIntrinsicHeight) / 2;
-            canvas.drawBitmap(mBitmap, x, y, null);
+            // Previews are decoded at about the display size; scale them to cover the canvas
+            // like the wallpaper covers the screen, keeping the center
+            float scale = Math.max(width / (float) mIntrinsicWidth,
+                    height / (float) mIntrinsicHeight);
+            int w = (int) (mIntrinsicWidth * scale + 0.5f);
+            int h = (int) (mIntrinsicHeight * scale + 0.5f);
+            int x = (width - w) / 2;
+            int y = (height - h) / 2;
+            mDstRect.set(x, y, x + w, y + h);
+            canvas.drawBitmap(mBitmap, null, mDstRect, mPaint);
         }
 
         @Override
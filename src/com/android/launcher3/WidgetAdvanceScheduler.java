@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+import android.appwidget.AppWidgetProviderInfo;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewParent;
+import android.widget.Advanceable;
+
+/**
+ * Advances the auto-advancing widgets, such as photo stacks, on a single timer.
+ *
+ * Each advance interval is divided in slots one stagger apart, and widget i advances in slot
+ * i modulo the slot count, so that at most one batch of widgets updates on any frame. The timer
+ * only fires for occupied slots and allocates nothing per tick. Widgets whose page is not on
+ * screen are skipped until the user scrolls to them. Only used from the UI thread.
+ */
+class WidgetAdvanceScheduler {
+    static final String TAG = "Launcher.WidgetAdvanceScheduler";
+
+    interface Visibility {
+        /** Returns whether the user can see the widget with the given host view. */
+        boolean isOnScreen(View hostView);
+    }
+
+    private final Handler mHandler = new Handler();
+    private final Visibility mVisibility;
+    private final int mInterval;
+    private final int mStagger;
+    private final int mSlotCount;
+
+    private final ArrayList<View> mHostViews = new ArrayList<View>();
+    private final ArrayList<AppWidgetProviderInfo> mInfos = new ArrayList<AppWidgetProviderInfo>();
+    /** The advanceable view of each widget, found again if the widget inflates new views. */
+    private final ArrayList<View> mAdvanceViews = new ArrayList<View>();
+
+    private boolean mRunning;
+    /** Uptime of slot 0 of the current cycle. */
+    private long mCycleStart;
+    private int mNextSlot;
+    /** Time left until the next tick when the scheduler was paused, or -1. */
+    private long mTimeLeft = -1;
+
+    // Counters reported by dump()
+    private int mAdvanced;
+    private int mSkipped;
+
+    private final Runnable mTick = new Runnable() {
+        public void run() {
+            tick();
+        }
+    };
+
+    WidgetAdvanceScheduler(Visibility visibility, int interval, int stagger) {
+        mVisibility = visibility;
+        mInterval = interval;
+        mStagger = stagger;
+        mSlotCount = Math.max(1, interval / stagger);
+    }
+
+    /**
+     * Adds the widget if its provider declares an advanceable view.
+     */
+    void add(View hostView, AppWidgetProviderInfo info) {
+        if (info == null || info.autoAdvanceViewId == -1 || mHostViews.contains(hostView)) {
+            return;
+        }
+        final View v = hostView.findViewById(info.autoAdvanceViewId);
+        if (v instanceof Advanceable) {
+            mHostViews.add(hostView);
+            mInfos.add(info);
+            mAdvanceViews.add(v);
+            ((Advanceable) v).fyiWillBeAdvancedByHostKThx();
+            updateTimer();
+        }
+    }
+
+    void remove(View hostView) {
+        final int index = mHostViews.indexOf(hostView);
+        if (index >= 0) {
+            mHostViews.remove(index);
+            mInfos.remove(index);
+            mAdvanceViews.remove(index);
+            updateTimer();
+        }
+    }
+
+    void clear() {
+        mHostViews.clear();
+        mInfos.clear();
+        mAdvanceViews.clear();
+        mTimeLeft = -1;
+        updateTimer();
+    }
+
+    /**
+     * Starts or pauses the timer; a paused timer resumes where it left off.
+     */
+    void setRunning(boolean running) {
+        mRunning = running;
+        updateTimer();
+    }
+
+    private void updateTimer() {
+        final boolean run = mRunning && !mHostViews.isEmpty();
+        final boolean scheduled = mCycleStart != 0;
+        if (run == scheduled) {
+            return;
+        }
+        final long now = SystemClock.uptimeMillis();
+        if (run) {
+            if (mTimeLeft == -1) {
+                mCycleStart = now + mInterval;
+                mNextSlot = 0;
+            } else {
+                mCycleStart = now + mTimeLeft - (long) mNextSlot * mStagger;
+            }
+            mHandler.postAtTime(mTick, nextTickTime());
+        } else {
+            mTimeLeft = mHostViews.isEmpty() ? -1 : Math.max(0, nextTickTime() - now);
+            mCycleStart = 0;
+            mHandler.removeCallbacks(mTick);
+        }
+    }
+
+    private long nextTickTime() {
+        return mCycleStart + (long) mNextSlot * mStagger;
+    }
+
+    private void tick() {
+        final int count = mHostViews.size();
+        for (int i = mNextSlot; i < count; i += mSlotCount) {
+            final View hostView = mHostViews.get(i);
+            if (!mVisibility.isOnScreen(hostView)) {
+                mSkipped++;
+                continue;
+            }
+            final View v = getAdvanceView(i);
+            if (v instanceof Advanceable) {
+                ((Advanceable) v).advance();
+                mAdvanced++;
+            }
+        }
+        // Only the first min(count, slots) slots hold widgets; wrap to the next cycle after them
+        mNextSlot++;
+        if (mNextSlot >= Math.min(count, mSlotCount)) {
+            mNextSlot = 0;
+            mCycleStart += mInterval;
+        }
+        mHandler.postAtTime(mTick, nextTickTime());
+    }
+
+    /**
+     * Returns the cached advanceable view of the widget, looking it up again if the widget
+     * replaced its views since.
+     */
+    private View getAdvanceView(int index) {
+        final View hostView = mHostViews.get(index);
+        View v = mAdvanceViews.get(index);
+        if (v != null && isDescendant(v, hostView)) {
+            return v;
+        }
+        v = hostView.findViewById(mInfos.get(index).autoAdvanceViewId);
+        mAdvanceViews.set(index, v);
+        return v;
+    }
+
+    private static boolean isDescendant(View v, View ancestor) {
+        ViewParent parent = v.getParent();
+        while (parent != null) {
+            if (parent == ancestor) {
+                return true;
+            }
+            parent = parent.getParent();
+        }
+        return false;
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Widget auto-advance: widgets=" + mHostViews.size()
+                + " running=" + (mCycleStart != 0)
+                + " advanced=" + mAdvanced + " skipped=" + mSkipped);
+    }
+}
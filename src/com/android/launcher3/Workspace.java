@@ -64,6 +64,7 @@ import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
+import android.view.ViewParent;
 import android.view.ViewPropertyAnimator;
 import android.view.View.MeasureSpec;
 import android.view.ViewGroup.LayoutParams;
@@ -77,6 +78,7 @@ import com.android.launcher3.R;
 import com.android.launcher3.FolderIcon.FolderRingAnimator;
 import com.android.launcher3.InstallWidgetReceiver.WidgetMimeTypeHandlerData;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -159,6 +161,12 @@ public class Workspace extends SmoothPagedView
     private float[] mTempCellLayoutCenterCoordinates = new float[2];
     private float[] mTempDragBottomRightCoordinates = new float[2];
     private Matrix mTempInverseMatrix = new Matrix();
+    private final float[] mTempTouchCoordinates = new float[2];
+    private final Rect mTempHotseatRect = new Rect();
+    // Canvas shared by the drag bitmap and outline builders, which all run on the UI thread
+    private final Canvas mDragCanvas = new Canvas();
+    private int mDragViewOffsetX;
+    private int mDragViewOffsetY;
 
     private SpringLoadedDragController mSpringLoadedDragController;
     private float mSpringLoadedShrinkFactor;
@@ -181,6 +189,10 @@ public class Workspace extends SmoothPagedView
     boolean mAnimatingViewIntoPlace = false;
     boolean mIsDragOccuring = false;
     boolean mChildrenLayersEnabled = true;
+    private final WorkspaceLayerManager mLayerManager = new WorkspaceLayerManager(this);
+    private final DragImageCache mDragImageCache = new DragImageCache();
+    // Scroller velocity above which the page we are scrolling towards gets its layers early
+    private final int mLayerPrefetchVelocity;
 
     /** Is the user is dragging an item near the edge of a page? */
     private boolean mInScrollArea = false;
@@ -209,6 +221,9 @@ public class Workspace extends SmoothPagedView
     private ScrollInterpolator mScrollInterpolator;
     private DecelerateInterpolator mDecelerateInterpolator;
     private DecelerateInterpolator mScaleInterpolator;
+    // Precomputed 3D scroll effect curves for normal scrolling and dot dragging
+    private DesktopTransformTable mNormalTransforms;
+    private DesktopTransformTable mDotDragTransforms;
     private int mDisplayWidth;
     private int mDisplayHeight;
     private int mWallpaperTravelWidth;
@@ -299,6 +314,7 @@ public class Workspace extends SmoothPagedView
         mFadeInAdjacentScreens =
             getResources().getBoolean(R.bool.config_workspaceFadeAdjacentScreens);
         mWallpaperManager = WallpaperManager.getInstance(context);
+        mLayerPrefetchVelocity = ViewConfiguration.get(context).getScaledMinimumFlingVelocity();
 
         int cellCountX = DEFAULT_CELL_COUNT_X;
         int cellCountY = DEFAULT_CELL_COUNT_Y;
@@ -431,6 +447,16 @@ public class Workspace extends SmoothPagedView
         mScrollInterpolator = new ScrollInterpolator();
         mDecelerateInterpolator = new DecelerateInterpolator(0.5f);
         mScaleInterpolator = new DecelerateInterpolator(0.1f);
+        final float springLoadedShrink = getResources().getInteger(
+                R.integer.config_workspaceSpringLoadShrinkPercentage) / 100f;
+        mNormalTransforms = new DesktopTransformTable(false, MAX_DESKTOP_ROTATE,
+                MAX_DESKTOP_TRANSLATE, mScrollInterpolator, mDecelerateInterpolator,
+                mScaleInterpolator, springLoadedShrink);
+        mDotDragTransforms = new DesktopTransformTable(true, MAX_DESKTOP_ROTATE_DOTDRAG,
+                MAX_DESKTOP_TRANSLATE_DOTDRAG, mScrollInterpolator, mDecelerateInterpolator,
+                mScaleInterpolator, springLoadedShrink);
+        mDragViewOffsetX = getResources().getDimensionPixelSize(R.dimen.dragViewOffsetX);
+        mDragViewOffsetY = getResources().getDimensionPixelSize(R.dimen.dragViewOffsetY);
         try {
             final Resources res = getResources();
             mBackground = res.getDrawable(R.drawable.apps_customize_bg);
@@ -450,6 +476,12 @@ public class Workspace extends SmoothPagedView
                 mWallpaperOffset.setOverrideHorizontalCatchupConstant(false);
                 mAnimator = null;
                 updateChildrenLayersEnabled();
+                // Apply the updates of the pages shown in the new state
+                applyPendingWidgetUpdates();
+                // The hotseat and the pages have settled where the new state puts them
+                if (mDragController != null) {
+                    mDragController.invalidateDropTargetGeometry();
+                }
             }
         };
 
@@ -694,6 +726,11 @@ public class Workspace extends SmoothPagedView
         return mIsSwitchingState;
     }
 
+    @Override
+    protected boolean isAnimatingFrames() {
+        return super.isAnimatingFrames() || mIsSwitchingState;
+    }
+
     protected void onWindowVisibilityChanged (int visibility) {
         mLauncher.onWindowVisibilityChanged(visibility);
     }
@@ -770,6 +807,8 @@ public class Workspace extends SmoothPagedView
 
     protected void onPageBeginMoving() {
         super.onPageBeginMoving();
+        // The neighbouring pages come into view
+        applyPendingWidgetUpdates();
 
         if (isHardwareAccelerated()) {
             updateChildrenLayersEnabled();
@@ -813,6 +852,7 @@ public class Workspace extends SmoothPagedView
             mDelayedResizeRunnable.run();
             mDelayedResizeRunnable = null;
         }
+        applyPendingWidgetUpdates();
     }
 
     @Override
@@ -1399,24 +1439,96 @@ public class Workspace extends SmoothPagedView
     }
 
     // This method just applies the value mChildrenLayersEnabled to all the pages that
-    // will be rendered on the next frame.
+    // will be rendered on the next frame, plus the page a fling is heading to.
     // We do this because calling setChildrenLayersEnabled on a view that's not
-    // visible/rendered causes slowdowns on some graphics cards
+    // visible/rendered causes slowdowns on some graphics cards, and because layers on
+    // off-screen pages only waste texture memory
     private void syncChildrenLayersEnabledOnVisiblePages() {
-        if (mChildrenLayersEnabled) {
-//            getVisiblePages(mTempVisiblePagesRange);
-//            final int leftScreen = mTempVisiblePagesRange[0];
-//            final int rightScreen = mTempVisiblePagesRange[1];
-//            if (leftScreen != -1 && rightScreen != -1) {
-                for (int i = 0/*leftScreen*/; i < getPageCount()/*= rightScreen*/; i++) {
-                    ViewGroup page = (ViewGroup) getPageAt(i);
-                    if (page.getVisibility() == VISIBLE &&
-                            page.getAlpha() > ViewConfiguration.ALPHA_THRESHOLD) {
-                        ((ViewGroup)getPageAt(i)).setChildrenLayersEnabled(true);
+        if (!mChildrenLayersEnabled) {
+            return;
+        }
+        final WorkspaceLayerManager layers = mLayerManager;
+        layers.beginUpdate();
+        final int pageCount = getPageCount();
+        if (isSmall() || mIsSwitchingState || isPreviewsState()) {
+            // Every page can be on screen while shrunk or switching state
+            for (int i = 0; i < pageCount; i++) {
+                requestLayersIfShown(getPageAt(i), false);
+            }
+        } else {
+            final int[] range = mTempVisiblePagesRange;
+            final int width = getMeasuredWidth();
+            final int center = mScrollX + width / 2;
+            getVisiblePages(range, center);
+            if (mState == State.NORMAL) {
+                // Past either end the circular scroll draws the page from the other end, which
+                // getVisiblePages leaves out; map those neighbours to the wrapped page
+                for (int i = 0; i < range.length; i++) {
+                    if (range[i] == INVALID_PAGE) {
+                        range[i] = locateOfCenter(center + (i - 1) * width);
                     }
                 }
-//            }
+            }
+            for (int i = 0; i < range.length; i++) {
+                requestLayersIfShown(getPageAt(range[i]), false);
+            }
+            if (pageCount > 0 && !mScroller.isFinished()
+                    && mScroller.getCurrVelocity() > mLayerPrefetchVelocity) {
+                final int direction = mScroller.getFinalX() > mScrollX ? 1 : -1;
+                int edge = direction > 0 ? range[2] : range[0];
+                if (edge == INVALID_PAGE) {
+                    edge = range[1];
+                }
+                if (edge != INVALID_PAGE) {
+                    final int next = ((edge + direction) % pageCount + pageCount) % pageCount;
+                    requestLayersIfShown(getPageAt(next), true);
+                }
+            }
+        }
+        layers.endUpdate();
+    }
+
+    private void requestLayersIfShown(View page, boolean prefetch) {
+        if (page != null && page.getVisibility() == VISIBLE &&
+                (prefetch || page.getAlpha() > ViewConfiguration.ALPHA_THRESHOLD)) {
+            mLayerManager.requestLayers(page, prefetch);
+        }
+    }
+
+    /**
+     * Returns whether the page can be seen: the current page, or any page drawn while the
+     * pages move or the workspace is shrunk.
+     */
+    boolean isPageOnScreen(View page) {
+        final int index = indexOfChild(page);
+        if (index < 0 || page.getVisibility() != VISIBLE) {
+            return false;
+        }
+        if (index == mCurrentPage) {
+            return true;
+        }
+        return (isSmall() || mIsSwitchingState || isPreviewsState() || isPageMoving())
+                && page.getAlpha() > ViewConfiguration.ALPHA_THRESHOLD;
+    }
+
+    /**
+     * Returns whether the widget is on a page which can be seen, see {@link #isPageOnScreen}.
+     */
+    boolean isWidgetOnScreen(View hostView) {
+        final ViewParent children = hostView.getParent();
+        if (!(children instanceof CellLayoutChildren)) {
+            return false;
         }
+        final ViewParent page = children.getParent();
+        return page instanceof CellLayout && isPageOnScreen((View) page);
+    }
+
+    WorkspaceLayerManager getLayerManager() {
+        return mLayerManager;
+    }
+
+    DragImageCache getDragImageCache() {
+        return mDragImageCache;
     }
 
     /**
@@ -1554,6 +1666,7 @@ public class Workspace extends SmoothPagedView
                 for (int i = 0; i < getPageCount(); i++) {
                     ((ViewGroup)getChildAt(i)).setChildrenLayersEnabled(false);
                 }
+                mLayerManager.reset();
             }
         }
     }
@@ -1649,7 +1762,7 @@ public class Workspace extends SmoothPagedView
     	if (LauncherLog.DEBUG_DRAG) {
     	    LauncherLog.d(TAG, "ondragStartedWithItem: v = " + v);
     	}
-        final Canvas canvas = new Canvas();
+        final Canvas canvas = mDragCanvas;
 
         // We need to add extra padding to the bitmap to make room for the glow effect
         final int bitmapPadding = HolographicOutlineHelper.MAX_OUTER_BLUR_RADIUS;
@@ -1659,7 +1772,7 @@ public class Workspace extends SmoothPagedView
     }
 
     public void onDragStartedWithItem(PendingAddItemInfo info, Bitmap b, Paint alphaClipPaint) {
-        final Canvas canvas = new Canvas();
+        final Canvas canvas = mDragCanvas;
 
         // We need to add extra padding to the bitmap to make room for the glow effect
         final int bitmapPadding = HolographicOutlineHelper.MAX_OUTER_BLUR_RADIUS;
@@ -1749,6 +1862,7 @@ public class Workspace extends SmoothPagedView
         if (mState == state) {
             return;
         }
+        final long changeStateStart = FrameStats.begin();
         if (mFirstLayout) {
             // (mFirstLayout == "first layout has not happened yet")
             // cancel any pending shrinks that were set earlier
@@ -2056,6 +2170,10 @@ public class Workspace extends SmoothPagedView
                     mPersonator.setBackgroundAlpha(a * originalPersonatorBgAlpha + b * targetPersonatorBgAlpha);
 //                    mHotseat.invalidate();
                     syncChildrenLayersEnabledOnVisiblePages();
+                    // The drag controller caches the hit rects of the drop targets moved above
+                    if (mDragController != null) {
+                        mDragController.invalidateDropTargetGeometry();
+                    }
                 }
             });
 //            ValueAnimator rotationAnim = null;
@@ -2103,6 +2221,7 @@ public class Workspace extends SmoothPagedView
             animateBackgroundGradient(0f, true);
         }
         syncChildrenLayersEnabledOnVisiblePages();
+        mFrameStats.end(FrameStats.CHANGE_STATE, changeStateStart);
     }
 
     private void clearCellLayout(CellLayout target) {
@@ -2217,18 +2336,31 @@ public class Workspace extends SmoothPagedView
     }
 
     /**
-     * Returns a new bitmap to be used as the object outline, e.g. to visualize the drop location.
-     * Responsibility for the bitmap is transferred to the caller.
+     * Returns a bitmap to be used as the object outline, e.g. to visualize the drop location.
+     * The bitmap may be shared with the outline cache and must not be modified.
      */
     private Bitmap createDragOutline(View v, Canvas canvas, int padding) {
         final int outlineColor = getResources().getColor(android.R.color.white/*holo_blue_light*/);
-        final Bitmap b = Bitmap.createBitmap(
-                v.getWidth() + padding, v.getHeight() + padding, Bitmap.Config.ARGB_8888);
+        final int width = v.getWidth() + padding;
+        final int height = v.getHeight() + padding;
+
+        // Dragging the same icon again reuses the outline computed last time
+        final Object content = HolographicOutlineHelper.getOutlineContent(v);
+        final Bitmap cached = HolographicOutlineHelper.getCachedOutline(content, width, height,
+                HolographicOutlineHelper.MEDIUM, outlineColor, outlineColor);
+        if (cached != null) {
+            return cached;
+        }
+
+        final Bitmap b = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
 
         canvas.setBitmap(b);
         drawDragView(v, canvas, padding, true);
         mOutlineHelper.applyMediumExpensiveOutlineWithBlur(b, canvas, outlineColor, outlineColor);
         canvas.setBitmap(null);
+
+        HolographicOutlineHelper.putCachedOutline(content, HolographicOutlineHelper.MEDIUM,
+                outlineColor, outlineColor, b);
         return b;
     }
 
@@ -2313,7 +2445,7 @@ public class Workspace extends SmoothPagedView
         child.clearFocus();
         child.setPressed(false);
 
-        final Canvas canvas = new Canvas();
+        final Canvas canvas = mDragCanvas;
 
         // We need to add extra padding to the bitmap to make room for the glow effect
         final int bitmapPadding = HolographicOutlineHelper.MAX_OUTER_BLUR_RADIUS;
@@ -2333,7 +2465,7 @@ public class Workspace extends SmoothPagedView
         final int bitmapPadding = HolographicOutlineHelper.MAX_OUTER_BLUR_RADIUS;
 
         // The drag bitmap follows the touch point around on the screen
-        Bitmap b = createDragBitmap(child, new Canvas(), bitmapPadding, false);
+        Bitmap b = createDragBitmap(child, mDragCanvas, bitmapPadding, false);
         final int bmpWidth = b.getWidth();
         mLauncher.getDragLayer().getLocationInDragLayer(child, mTempXY);
 
@@ -3099,7 +3231,9 @@ public class Workspace extends SmoothPagedView
         for (int i = 0; i < screenCount; i++) {
             CellLayout cl = (CellLayout) getPageAt(i);
 
-            final float[] touchXy = {originX, originY};
+            final float[] touchXy = mTempTouchCoordinates;
+            touchXy[0] = originX;
+            touchXy[1] = originY;
             // Transform the touch coordinates to the CellLayout's local coordinates
             // If the touch point is within the bounds of the cell layout, we can return immediately
             cl.getMatrix().invert(mTempInverseMatrix);
@@ -3148,8 +3282,8 @@ public class Workspace extends SmoothPagedView
 
         // First off, the drag view has been shifted in a way that is not represented in the
         // x and y values or the x/yOffsets. Here we account for that shift.
-        x += getResources().getDimensionPixelSize(R.dimen.dragViewOffsetX);
-        y += getResources().getDimensionPixelSize(R.dimen.dragViewOffsetY);
+        x += mDragViewOffsetX;
+        y += mDragViewOffsetY;
 
         // These represent the visual top and left of drag view if a dragRect was provided.
         // If a dragRect was not provided, then they correspond to the actual view left and
@@ -3182,7 +3316,7 @@ public class Workspace extends SmoothPagedView
         if (mInScrollArea) return;
         if (mIsSwitchingState) return;
 
-        Rect r = new Rect();
+        final Rect r = mTempHotseatRect;
         CellLayout layout = null;
         ItemInfo item = (ItemInfo) d.dragInfo;
 
@@ -3348,20 +3482,22 @@ public class Workspace extends SmoothPagedView
     	final CellLayout dropTargetLayout = mDragTargetLayout;
     	final float scale = parent.getScaleX();
     	final boolean moveLayout = parent != dropTargetLayout;
-    	final RectF temp = new RectF();
     	final boolean inHotseat = mLauncher.isHotseatLayout(parent);
     	//init a view used for display in moving animation by what we want
     	if (backMode) {
     		activeView = lastChangedView;
 		} else {
-			Bitmap b = null;
 	    	ItemInfo info = (ItemInfo) dragOverView.getTag();
-	        if (info.dragImage != null) {
-				b = info.dragImage;
-			} else {
+	    	// Folder icons change with their contents, only icons can be checked for staleness
+	    	final Object source = dragOverView instanceof TextView
+	    	        ? ((TextView) dragOverView).getCompoundDrawables()[1] : null;
+			Bitmap b = source != null ? mDragImageCache.get(info, source) : null;
+	        if (b == null) {
 				int bitmapPadding = HolographicOutlineHelper.MAX_OUTER_BLUR_RADIUS;
-				b = createDragBitmap(dragOverView, new Canvas(), bitmapPadding, false);
-				info.dragImage = b;
+				b = createDragBitmap(dragOverView, mDragCanvas, bitmapPadding, false);
+				if (source != null) {
+				    mDragImageCache.put(info, source, b);
+				}
 			}
 	        activeView = new DragView(mLauncher, b, 0,
 	        		0, 0, 0, b.getWidth(), b.getHeight(), dragOverView);
@@ -3534,6 +3670,19 @@ public class Workspace extends SmoothPagedView
             onDropExternal(dragInfo.dropPos, (ItemInfo) dragInfo, (CellLayout) layout, false);
             return true;
         }
+        if (!mLauncher.isHotseatLayout(layout)) {
+            // The screen is full, spill over to the closest page that has room. The index takes
+            // and returns screens, which are child indices, and walks them in page order
+            final int screen = LauncherModel.sVacancyIndex.findVacantCell(indexOfChild(layout),
+                    dragInfo.spanX, dragInfo.spanY, mTempEstimate);
+            if (screen >= 0) {
+                final CellLayout target = (CellLayout) getChildAt(screen);
+                if (target.findCellForSpan(mTempEstimate, dragInfo.spanX, dragInfo.spanY)) {
+                    onDropExternal(dragInfo.dropPos, (ItemInfo) dragInfo, target, false);
+                    return true;
+                }
+            }
+        }
         mLauncher.showOutOfSpaceMessage();
         return false;
     }
@@ -4024,6 +4173,108 @@ public class Workspace extends SmoothPagedView
         return null;
     }
 
+    /**
+     * Releases the views of the folders which are not open, they are inflated again the next
+     * time they are needed.
+     */
+    void releaseClosedFolders() {
+        int released = 0;
+        ArrayList<CellLayoutChildren> childrenLayouts = getWorkspaceAndHotseatCellLayoutChildren();
+        for (CellLayoutChildren layout: childrenLayouts) {
+            int childCount = layout.getChildCount();
+            for (int j = 0; j < childCount; j++) {
+                View v = layout.getChildAt(j);
+                if (v instanceof FolderIcon && ((FolderIcon) v).releaseFolder()) {
+                    released++;
+                }
+            }
+        }
+        if (LauncherLog.DEBUG) {
+            LauncherLog.d(TAG, "releaseClosedFolders: released " + released + " folders");
+        }
+    }
+
+    /**
+     * Drops the cached preview bitmaps of every folder icon, they are rebuilt when drawn.
+     */
+    void releaseFolderPreviews() {
+        ArrayList<CellLayoutChildren> childrenLayouts = getWorkspaceAndHotseatCellLayoutChildren();
+        for (CellLayoutChildren layout: childrenLayouts) {
+            int childCount = layout.getChildCount();
+            for (int j = 0; j < childCount; j++) {
+                View v = layout.getChildAt(j);
+                if (v instanceof FolderIcon) {
+                    ((FolderIcon) v).releasePreview();
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the folder icons holding a cached preview bitmap and adds up the memory of those
+     * bitmaps.
+     *
+     * @param outBytes receives the preview memory in its first element, in bytes.
+     * @return the number of cached previews.
+     */
+    int getFolderPreviewFootprint(long[] outBytes) {
+        int previews = 0;
+        long bytes = 0;
+        ArrayList<CellLayoutChildren> childrenLayouts = getWorkspaceAndHotseatCellLayoutChildren();
+        for (CellLayoutChildren layout: childrenLayouts) {
+            int childCount = layout.getChildCount();
+            for (int j = 0; j < childCount; j++) {
+                View v = layout.getChildAt(j);
+                if (v instanceof FolderIcon) {
+                    final int previewBytes = ((FolderIcon) v).getPreviewBytes();
+                    if (previewBytes > 0) {
+                        previews++;
+                        bytes += previewBytes;
+                    }
+                }
+            }
+        }
+        outBytes[0] = bytes;
+        return previews;
+    }
+
+    /**
+     * Applies the widget updates deferred while their page could not be seen, for the widgets
+     * which can be seen now.
+     */
+    void applyPendingWidgetUpdates() {
+        final int screenCount = getChildCount();
+        for (int screen = 0; screen < screenCount; screen++) {
+            final CellLayout page = (CellLayout) getChildAt(screen);
+            if (!isPageOnScreen(page)) {
+                continue;
+            }
+            final CellLayoutChildren layout = page.getChildrenLayout();
+            final int childCount = layout.getChildCount();
+            for (int j = 0; j < childCount; j++) {
+                final View v = layout.getChildAt(j);
+                if (v instanceof LauncherAppWidgetHostView) {
+                    ((LauncherAppWidgetHostView) v).applyPendingUpdatesIfAllowed();
+                }
+            }
+        }
+    }
+
+    void dumpWidgetUpdates(String prefix, PrintWriter writer) {
+        final int screenCount = getChildCount();
+        for (int screen = 0; screen < screenCount; screen++) {
+            final CellLayoutChildren layout = ((CellLayout) getChildAt(screen)).getChildrenLayout();
+            final int childCount = layout.getChildCount();
+            for (int j = 0; j < childCount; j++) {
+                final View v = layout.getChildAt(j);
+                if (v instanceof LauncherAppWidgetHostView) {
+                    ((LauncherAppWidgetHostView) v).dumpUpdateStats(prefix + "screen " + screen
+                            + ": ", writer);
+                }
+            }
+        }
+    }
+
     void clearDropTargets() {
         ArrayList<CellLayoutChildren> childrenLayouts = getWorkspaceAndHotseatCellLayoutChildren();
         for (CellLayoutChildren layout: childrenLayouts) {
@@ -4096,6 +4347,10 @@ public class Workspace extends SmoothPagedView
                                     }
                                 }
                             }
+                            if (!appsToRemoveFromFolder.isEmpty() && view instanceof FolderIcon) {
+                                // The folder replaces itself by its last item if needed
+                                ((FolderIcon) view).getFolder();
+                            }
                             for (ShortcutInfo item: appsToRemoveFromFolder) {
                                 info.remove(item);
                                 LauncherModel.deleteItemFromDatabase(mLauncher, item);
@@ -4186,6 +4441,9 @@ public class Workspace extends SmoothPagedView
                             }
                         }
                     }
+                    if (view instanceof FolderIcon) {
+                        ((FolderIcon) view).invalidatePreview();
+                    }
                     final Folder folder = getOpenFolder();
                     if (folder != null) folder.notifyDataSetChanged();
                 }
@@ -4306,86 +4564,46 @@ public class Workspace extends SmoothPagedView
 	@Override
 	protected void screenScrolled(int center) {
 		if (mState == State.NORMAL) {
-		    final int visualIndex = (center + getMeasuredWidth()) / getMeasuredWidth() - 1;//make ensure this figure can be nagetive
+		    final int width = getMeasuredWidth();
+		    final int visualIndex = (center + width) / width - 1;//make ensure this figure can be nagetive
             int middle = locateOfCenter(center);
-            int leftOne = locateOfCenter(center - getMeasuredWidth());
-            int rightOne = locateOfCenter(center + getMeasuredWidth());
+            int leftOne = locateOfCenter(center - width);
+            int rightOne = locateOfCenter(center + width);
 		    CellLayout page = (CellLayout) getPageAt(middle);
 		    CellLayout prevPage = (CellLayout) getPageAt(leftOne);
 		    CellLayout nextPage = (CellLayout) getPageAt(rightOne);
+		    final DesktopTransformTable table = mDotDragging ? mDotDragTransforms : mNormalTransforms;
+		    final boolean dotDragging = table.dotDragging;
 		    float scrollProgress = getScrollProgress(center, page, visualIndex);
             boolean positive = scrollProgress >= 0;
-            float degree = scrollProgress * (mDotDragging ? MAX_DESKTOP_ROTATE_DOTDRAG : MAX_DESKTOP_ROTATE);
-            float translateMax = mDotDragging ? MAX_DESKTOP_TRANSLATE_DOTDRAG : MAX_DESKTOP_TRANSLATE;
+            float degree = scrollProgress * table.maxRotation;
+            float translateMax = table.maxTranslation;
             float avaliableAlpha = Math.abs(scrollProgress);
-            float alphaPageBg = mDotDragging ? getLessAccelerateAlpha(1 - avaliableAlpha) : getAccelerateAlpha(avaliableAlpha);
-            float alphaNeighbourBg = mDotDragging ? getLessAccelerateAlpha(avaliableAlpha) : getAccelerateAlpha(1f - avaliableAlpha);
+            float alphaPageBg = dotDragging ? table.lessAccelerateAlpha(1 - avaliableAlpha) : table.accelerateAlpha(avaliableAlpha);
+            float alphaNeighbourBg = dotDragging ? table.lessAccelerateAlpha(avaliableAlpha) : table.accelerateAlpha(1f - avaliableAlpha);
+            float alphaNeighbour = table.lessAccelerateAlpha(avaliableAlpha);
 		    if (page != null) {
-		        if (mDotDragging) {
-	                if (page.getPivotX() != page.getMeasuredWidth() * 0.5f) {
-	                    page.setPivotX(page.getMeasuredWidth() * 0.5f); 
-	                }
-	                page.setFastScaleX(getLessDecelarateScale(scrollProgress));
-	                page.setFastScaleY(getLessDecelarateScale(scrollProgress));
-	            } else if (positive && page.getPivotX() != 0f) {//optimization  " != 0f" before pivot changes
-	                page.setPivotX(0f);
-	            } else if (!positive && page.getPivotX() != page.getMeasuredWidth()) {
-	                page.setPivotX(page.getMeasuredWidth());
-	            }
-	            if (page.getPivotY() != page.getMeasuredHeight() * 0.5f) {
-	                page.setPivotY(page.getMeasuredHeight() * 0.5f);
-	            }
-	            page.setFastRotationY(degree);
-	            page.setFastTranslationX(scrollProgress * page.getMeasuredWidth() * translateMax);
-	            page.setFastAlpha(getLessAccelerateAlpha(1 - avaliableAlpha));
-	            page.setFastBackgroundAlpha(alphaPageBg);
-	            page.invalidate();
+		        final int pageWidth = page.getMeasuredWidth();
+		        final float pivotX = dotDragging ? pageWidth * 0.5f : (positive ? 0f : pageWidth);
+		        applyDesktopTransform(page, pivotX, degree, scrollProgress * pageWidth * translateMax,
+		                table.lessAccelerateAlpha(1 - avaliableAlpha), alphaPageBg,
+		                dotDragging ? table.scale(scrollProgress) : -1f);
             }
             if (prevPage != null && (!positive || leftOne != rightOne)) {
-                if (mDotDragging) {
-                    if (prevPage.getPivotX() != prevPage.getMeasuredWidth() * 0.5f) {
-                        prevPage.setPivotX(prevPage.getMeasuredWidth() * 0.5f);
-                    }
-                } else if (prevPage.getPivotX() != 0f) {
-                    prevPage.setPivotX(0f);
-                }
-                if (prevPage.getPivotY() != prevPage.getMeasuredHeight() * 0.5f) {
-                    prevPage.setPivotY(prevPage.getMeasuredHeight() * 0.5f);
-                }
-                prevPage.setFastBackgroundAlpha(alphaNeighbourBg);
-                prevPage.setFastAlpha(getLessAccelerateAlpha(avaliableAlpha));
-                prevPage.setFastRotationY(degree + (mDotDragging ? MAX_DESKTOP_ROTATE_DOTDRAG : MAX_DESKTOP_ROTATE));
+                final int pageWidth = prevPage.getMeasuredWidth();
                 float scrollProgressFade = getScrollProgress(center, prevPage, visualIndex - 1);
-                float translationX = scrollProgressFade * prevPage.getMeasuredWidth() * translateMax;
-                prevPage.setFastTranslationX(translationX);
-                if (mDotDragging) {
-                    prevPage.setFastScaleX(getLessDecelarateScale(scrollProgressFade));
-                    prevPage.setFastScaleY(getLessDecelarateScale(scrollProgressFade));
-                }
-                prevPage.invalidate();
+                applyDesktopTransform(prevPage, dotDragging ? pageWidth * 0.5f : 0f,
+                        degree + table.maxRotation, scrollProgressFade * pageWidth * translateMax,
+                        alphaNeighbour, alphaNeighbourBg,
+                        dotDragging ? table.scale(scrollProgressFade) : -1f);
             }
             if (nextPage != null && (positive || leftOne != rightOne)) {
-                if (mDotDragging) {
-                    if (nextPage.getPivotX() != nextPage.getMeasuredWidth() * 0.5f) {
-                        nextPage.setPivotX(nextPage.getMeasuredWidth() * 0.5f);
-                    }
-                } else if (nextPage.getPivotX() != nextPage.getMeasuredWidth()) {
-                    nextPage.setPivotX(nextPage.getMeasuredWidth());
-                }
-                if (nextPage.getPivotY() != nextPage.getMeasuredHeight() * 0.5f) {
-                    nextPage.setPivotY(nextPage.getMeasuredHeight() * 0.5f);
-                }
-                nextPage.setFastBackgroundAlpha(alphaNeighbourBg);
-                nextPage.setFastAlpha(getLessAccelerateAlpha(avaliableAlpha));
-                nextPage.setFastRotationY(degree - (mDotDragging ? MAX_DESKTOP_ROTATE_DOTDRAG : MAX_DESKTOP_ROTATE));
+                final int pageWidth = nextPage.getMeasuredWidth();
                 float scrollProgressFade = getScrollProgress(center, nextPage, visualIndex + 1);
-                float translationX = scrollProgressFade * nextPage.getMeasuredWidth() * translateMax;
-                nextPage.setFastTranslationX(translationX);
-                if (mDotDragging) {
-                    nextPage.setFastScaleX(getLessDecelarateScale(scrollProgressFade));
-                    nextPage.setFastScaleY(getLessDecelarateScale(scrollProgressFade));
-                }
-                nextPage.invalidate();
+                applyDesktopTransform(nextPage, dotDragging ? pageWidth * 0.5f : pageWidth,
+                        degree - table.maxRotation, scrollProgressFade * pageWidth * translateMax,
+                        alphaNeighbour, alphaNeighbourBg,
+                        dotDragging ? table.scale(scrollProgressFade) : -1f);
             }
             /*for (int i = 0; i < getChildCount(); i++) {
                 CellLayout child = (CellLayout) getChildAt(i);
@@ -4405,23 +4623,50 @@ public class Workspace extends SmoothPagedView
 		}*/
 	}
 	/**
-	 * Calculate specified alpha with extremely high speed
-	 * @param out
-	 * @return
+	 * Applies one frame of the 3D scroll effect to a page, only touching the properties
+	 * which actually changed since the last frame.
+	 *
+	 * @param scale the scale to apply, or a negative value to leave the scale untouched.
 	 */
-	private float getAccelerateAlpha(float out) {
-	    out = mScrollInterpolator.getInterpolation(out);
-        return mDotDragging ? Math.max(0.35f, out) : out;
-	}
-	private float getLessAccelerateAlpha(float out) {
-	    out = mDecelerateInterpolator.getInterpolation(out);
-		return mDotDragging ? Math.max(0.35f, out) : out;
-	}
-	private float getLessDecelarateScale(float out) {
-	    float base = getResources().getInteger(R.integer.config_workspaceSpringLoadShrinkPercentage) / 100f;
-        return Math.max(0.6f, base * (1 - Math.abs(mScaleInterpolator.getInterpolation(out))));
+	private void applyDesktopTransform(CellLayout page, float pivotX, float rotationY,
+	        float translationX, float alpha, float backgroundAlpha, float scale) {
+	    boolean changed = false;
+	    if (page.getPivotX() != pivotX) {
+	        page.setPivotX(pivotX);
+	        changed = true;
+	    }
+	    final float pivotY = page.getMeasuredHeight() * 0.5f;
+	    if (page.getPivotY() != pivotY) {
+	        page.setPivotY(pivotY);
+	        changed = true;
+	    }
+	    if (page.getRotationY() != rotationY) {
+	        page.setFastRotationY(rotationY);
+	        changed = true;
+	    }
+	    if (page.getTranslationX() != translationX) {
+	        page.setFastTranslationX(translationX);
+	        changed = true;
+	    }
+	    if (page.getChildrenAlpha() != alpha) {
+	        page.setFastAlpha(alpha);
+	        changed = true;
+	    }
+	    if (page.getBackgroundAlpha() != backgroundAlpha) {
+	        page.setFastBackgroundAlpha(backgroundAlpha);
+	        changed = true;
+	    }
+	    if (scale >= 0 && (page.getScaleX() != scale || page.getScaleY() != scale)) {
+	        page.setFastScaleX(scale);
+	        page.setFastScaleY(scale);
+	        changed = true;
+	    }
+	    if (changed) {
+	        page.invalidate();
+	    }
 	}
 
+
 	@Override
 	protected void showPreviews(boolean start) {
 //		super.showPreviews(start);
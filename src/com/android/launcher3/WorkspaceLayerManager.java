@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Decides which workspace pages hold hardware layers for their children.
+ *
+ * Only the pages that are visible, plus the page a fling is heading to, keep their layers.
+ * Layers of pages that scroll out of range are released right away, while the layers of the
+ * page we are about to scroll onto are built on a later frame, so that the texture upload
+ * does not land on the frame that first shows the page.
+ */
+class WorkspaceLayerManager {
+    static final String TAG = "Launcher.WorkspaceLayerManager";
+
+    private final Workspace mWorkspace;
+
+    /** The pages which currently have children layers enabled. */
+    private final ArrayList<ViewGroup> mLayeredPages = new ArrayList<ViewGroup>();
+    /** Scratch list of the pages wanted by the update in progress. */
+    private final ArrayList<ViewGroup> mWantedPages = new ArrayList<ViewGroup>();
+    /** Pages wanted ahead of time, whose layers are built by mBuildPendingLayers. */
+    private final ArrayList<ViewGroup> mPendingPages = new ArrayList<ViewGroup>();
+    private boolean mBuildPosted;
+
+    // Counters reported by dump()
+    private int mLayersEnabled;
+    private int mLayersReleased;
+    private int mLayersPrebuilt;
+    private int mMaxLayeredPages;
+
+    private final Runnable mBuildPendingLayers = new Runnable() {
+        public void run() {
+            mBuildPosted = false;
+            final int count = mPendingPages.size();
+            for (int i = 0; i < count; i++) {
+                final ViewGroup page = mPendingPages.get(i);
+                if (!mLayeredPages.contains(page)) {
+                    continue;
+                }
+                page.setChildrenLayersEnabled(true);
+                if (page instanceof CellLayout && page.getWindowToken() != null
+                        && page.getWidth() > 0 && page.getHeight() > 0) {
+                    ((CellLayout) page).buildChildrenLayer();
+                    mLayersPrebuilt++;
+                }
+            }
+            mPendingPages.clear();
+        }
+    };
+
+    WorkspaceLayerManager(Workspace workspace) {
+        mWorkspace = workspace;
+    }
+
+    /**
+     * Starts collecting the pages which should have layers for the next frame.
+     */
+    void beginUpdate() {
+        mWantedPages.clear();
+    }
+
+    /**
+     * Requests layers for the page during the current update.
+     *
+     * @param prefetch true if the page is not on screen yet, in which case its layers are built
+     *        on a later frame.
+     */
+    void requestLayers(View page, boolean prefetch) {
+        if (!(page instanceof ViewGroup) || mWantedPages.contains(page)) {
+            return;
+        }
+        final ViewGroup group = (ViewGroup) page;
+        mWantedPages.add(group);
+        if (mLayeredPages.contains(group)) {
+            if (!prefetch) {
+                // It was prefetched and is now on screen, make sure it is not left behind
+                mPendingPages.remove(group);
+                group.setChildrenLayersEnabled(true);
+            }
+            return;
+        }
+        mLayeredPages.add(group);
+        mLayersEnabled++;
+        if (prefetch) {
+            mPendingPages.add(group);
+            if (!mBuildPosted) {
+                mBuildPosted = true;
+                mWorkspace.post(mBuildPendingLayers);
+            }
+        } else {
+            group.setChildrenLayersEnabled(true);
+        }
+    }
+
+    /**
+     * Releases the layers of every page not requested since {@link #beginUpdate()}.
+     */
+    void endUpdate() {
+        for (int i = mLayeredPages.size() - 1; i >= 0; i--) {
+            final ViewGroup page = mLayeredPages.get(i);
+            if (!mWantedPages.contains(page)) {
+                page.setChildrenLayersEnabled(false);
+                mLayeredPages.remove(i);
+                mPendingPages.remove(page);
+                mLayersReleased++;
+            }
+        }
+        mWantedPages.clear();
+        mMaxLayeredPages = Math.max(mMaxLayeredPages, mLayeredPages.size());
+    }
+
+    /**
+     * Forgets about all layers, called once the workspace disabled them on every page itself.
+     */
+    void reset() {
+        mLayersReleased += mLayeredPages.size();
+        mLayeredPages.clear();
+        mPendingPages.clear();
+        mWantedPages.clear();
+    }
+
+    int getLayerCount() {
+        return mLayeredPages.size();
+    }
+
+    /**
+     * Returns an estimate of the texture memory held by the page layers, in bytes.
+     */
+    long getLayerMemoryBytes() {
+        long bytes = 0;
+        final int count = mLayeredPages.size();
+        for (int i = 0; i < count; i++) {
+            final ViewGroup page = mLayeredPages.get(i);
+            final int childCount = page.getChildCount();
+            for (int j = 0; j < childCount; j++) {
+                final View child = page.getChildAt(j);
+                // ARGB_8888
+                bytes += (long) child.getWidth() * child.getHeight() * 4;
+            }
+        }
+        return bytes;
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Workspace layers: pages=" + getLayerCount()
+                + " memory=" + (getLayerMemoryBytes() / 1024) + "KB"
+                + " maxPages=" + mMaxLayeredPages
+                + " enabled=" + mLayersEnabled
+                + " released=" + mLayersReleased
+                + " prebuilt=" + mLayersPrebuilt);
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+
+/**
+ * Free cells of every desktop screen, as seen by the model.
+ *
+ * LauncherModel keeps the index up to date when it loads the workspace and whenever an item is
+ * added, moved, resized or deleted, so that placing an item without a target cell does not
+ * have to query the database or walk the CellLayouts screen by screen. Queries may come from
+ * any thread.
+ */
+class WorkspaceVacancyIndex {
+    static final String TAG = "Launcher.WorkspaceVacancyIndex";
+
+    /**
+     * The screen shown at each page position, left to right. Screens are the child indices of
+     * the workspace that items store, which differ from the positions once the user reorders
+     * pages. Deleted pages are left out.
+     */
+    private int[] mPageOrder;
+    private CellOccupancy[] mScreens;
+    private int mCountX;
+    private int mCountY;
+
+    /** Where each indexed item was last marked, as { screen, cellX, cellY, spanX, spanY }. */
+    private final HashMap<Long, int[]> mPlacements = new HashMap<Long, int[]>();
+    private boolean mLoaded;
+
+    /**
+     * @param screenCount the number of pages until the workspace reports its page order.
+     */
+    WorkspaceVacancyIndex(int screenCount) {
+        mPageOrder = new int[screenCount];
+        for (int i = 0; i < screenCount; i++) {
+            mPageOrder[i] = i;
+        }
+    }
+
+    /**
+     * Sets the pages of the workspace, called whenever a page is added, deleted or moved.
+     *
+     * @param pageOrder the screen shown at each page position.
+     */
+    synchronized void setPageOrder(int[] pageOrder) {
+        mPageOrder = pageOrder.clone();
+        allocateScreens();
+    }
+
+    /**
+     * Returns a copy of the screen shown at each page position.
+     */
+    synchronized int[] getPageOrder() {
+        return mPageOrder.clone();
+    }
+
+    /**
+     * Sets the size of the grid, re-marking the known items if it changed.
+     */
+    synchronized void setGridSize(int countX, int countY) {
+        if (mScreens != null && mCountX == countX && mCountY == countY) {
+            return;
+        }
+        mCountX = countX;
+        mCountY = countY;
+        allocateScreens();
+    }
+
+    /**
+     * Allocates one occupancy per screen up to the highest screen of the page order, then
+     * re-marks the known items.
+     */
+    private void allocateScreens() {
+        if (mCountX <= 0 || mCountY <= 0) {
+            return;
+        }
+        int screenCount = 0;
+        for (int screen : mPageOrder) {
+            screenCount = Math.max(screenCount, screen + 1);
+        }
+        mScreens = new CellOccupancy[screenCount];
+        for (int i = 0; i < screenCount; i++) {
+            mScreens[i] = new CellOccupancy(mCountX, mCountY);
+        }
+        for (int[] p : mPlacements.values()) {
+            if (p[0] < screenCount) {
+                mScreens[p[0]].markSpan(p[1], p[2], p[3], p[4], true);
+            }
+        }
+    }
+
+    /**
+     * Forgets every item, called before the model reloads the workspace.
+     */
+    synchronized void clear() {
+        mPlacements.clear();
+        mLoaded = false;
+        if (mScreens != null) {
+            for (CellOccupancy screen : mScreens) {
+                screen.clear();
+            }
+        }
+    }
+
+    /**
+     * Called once the model has loaded the workspace; until then queries report no space so
+     * that callers fall back to their own lookup.
+     */
+    synchronized void setLoaded() {
+        mLoaded = true;
+    }
+
+    synchronized boolean isLoaded() {
+        return mLoaded && mScreens != null;
+    }
+
+    /**
+     * Records the current position of the item, or drops it if it is no longer on a desktop
+     * screen. Items of screens the workspace does not have yet are kept, and marked once it
+     * does.
+     */
+    synchronized void update(ItemInfo item) {
+        remove(item.id);
+        if (item.container != LauncherSettings.Favorites.CONTAINER_DESKTOP || item.screen < 0) {
+            return;
+        }
+        final int[] p = new int[] {
+            item.screen, item.cellX, item.cellY, Math.max(item.spanX, 1), Math.max(item.spanY, 1)
+        };
+        mPlacements.put(item.id, p);
+        if (mScreens != null && p[0] < mScreens.length) {
+            mScreens[p[0]].markSpan(p[1], p[2], p[3], p[4], true);
+        }
+    }
+
+    synchronized void remove(long id) {
+        final int[] p = mPlacements.remove(id);
+        if (p != null && mScreens != null && p[0] < mScreens.length) {
+            mScreens[p[0]].markSpan(p[1], p[2], p[3], p[4], false);
+            // Overlapping items are rejected by the loader, but be safe and re-mark the others
+            for (int[] other : mPlacements.values()) {
+                if (other[0] == p[0]) {
+                    mScreens[p[0]].markSpan(other[1], other[2], other[3], other[4], true);
+                }
+            }
+        }
+    }
+
+    private int screenAt(int preferredScreen, int n) {
+        return screenAt(mPageOrder, preferredScreen, n);
+    }
+
+    /**
+     * Returns the n-th screen to try when looking for space around the given one: the screen
+     * itself, then the pages next to it on either side, alternating right and left and
+     * wrapping around.
+     *
+     * @param pageOrder the screen shown at each page position, as from {@link #getPageOrder}.
+     */
+    static int screenAt(int[] pageOrder, int preferredScreen, int n) {
+        final int count = pageOrder.length;
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            if (pageOrder[i] == preferredScreen) {
+                position = i;
+                break;
+            }
+        }
+        final int offset = (n + 1) / 2;
+        position = (n % 2 == 1) ? position + offset : position - offset;
+        return pageOrder[(position % count + count) % count];
+    }
+
+    /**
+     * Returns a copy of the occupancy of every screen, for callers placing several items
+     * before committing them, or null if the index is not loaded.
+     */
+    synchronized CellOccupancy[] snapshot() {
+        if (!isLoaded()) {
+            return null;
+        }
+        final CellOccupancy[] screens = new CellOccupancy[mScreens.length];
+        for (int i = 0; i < screens.length; i++) {
+            screens[i] = new CellOccupancy(mCountX, mCountY);
+        }
+        for (int[] p : mPlacements.values()) {
+            if (p[0] < screens.length) {
+                screens[p[0]].markSpan(p[1], p[2], p[3], p[4], true);
+            }
+        }
+        return screens;
+    }
+
+    /**
+     * Finds the first free span in reading order, trying the preferred screen first.
+     *
+     * @param cellXY receives the top-left cell of the span.
+     * @return the screen of the span, or -1 if there is no room or the index is not loaded.
+     */
+    synchronized int findVacantCell(int preferredScreen, int spanX, int spanY, int[] cellXY) {
+        if (!isLoaded()) {
+            return -1;
+        }
+        for (int n = 0; n < mPageOrder.length; n++) {
+            final int screen = screenAt(preferredScreen, n);
+            if (mScreens[screen].findFirstVacant(spanX, spanY, cellXY)) {
+                return screen;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the free span closest to the given cell on the preferred screen, or the first free
+     * span of the closest screen that has one.
+     *
+     * @param cellXY receives the top-left cell of the span.
+     * @return the screen of the span, or -1 if there is no room or the index is not loaded.
+     */
+    synchronized int findNearestVacantCell(int preferredScreen, int cellX, int cellY,
+            int spanX, int spanY, int[] cellXY) {
+        if (!isLoaded()) {
+            return -1;
+        }
+        if (preferredScreen >= 0 && preferredScreen < mScreens.length) {
+            // Cell units, doubled to keep the same integer distances as CellLayout
+            mScreens[preferredScreen].findNearest(2 * cellX, 2 * cellY, 0, 0, 2, 2,
+                    spanX, spanY, true, cellXY);
+            if (cellXY[0] >= 0) {
+                return preferredScreen;
+            }
+        }
+        for (int n = 0; n < mPageOrder.length; n++) {
+            final int screen = screenAt(preferredScreen, n);
+            if (screen != preferredScreen && mScreens[screen].findFirstVacant(spanX, spanY, cellXY)) {
+                return screen;
+            }
+        }
+        return -1;
+    }
+
+    synchronized boolean isSpanFree(int screen, int cellX, int cellY, int spanX, int spanY) {
+        return isLoaded() && screen >= 0 && screen < mScreens.length
+                && mScreens[screen].isSpanFree(cellX, cellY, spanX, spanY);
+    }
+
+    synchronized void dump(String prefix, PrintWriter writer) {
+        if (!isLoaded()) {
+            writer.println(prefix + "Vacancy index: not loaded");
+            return;
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (int s : mPageOrder) {
+            final CellOccupancy screen = mScreens[s];
+            sb.append(' ').append(s).append('=')
+                    .append(screen.countX * screen.countY
+                            - screen.countOccupied(0, 0, screen.countX, screen.countY));
+        }
+        writer.println(prefix + "Vacancy index: items=" + mPlacements.size()
+                + " free cells per screen:" + sb);
+    }
+}
@@ -0,0 +1,37 @@
+#
+# Copyright (C) 2012 The Android Open Source Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+# Host-side tests and benchmarks of the launcher classes which only use plain Java.
+# Build with "mmm packages/apps/Launcher3/tests/host" and run with
+#   java -cp $ANDROID_HOST_OUT/framework/Launcher3HostTests.jar:$ANDROID_HOST_OUT/framework/junit.jar \
+#       junit.textui.TestRunner com.android.launcher3.CellOccupancyTest
+#   java -cp $ANDROID_HOST_OUT/framework/Launcher3HostTests.jar \
+#       com.android.launcher3.HostBenchmarks
+
+LOCAL_PATH := $(call my-dir)
+include $(CLEAR_VARS)
+
+LOCAL_MODULE_TAGS := tests
+
+LOCAL_SRC_FILES := $(call all-java-files-under, src) \
+    ../../src/com/android/launcher3/AlphaBlur.java \
+    ../../src/com/android/launcher3/CellOccupancy.java
+
+LOCAL_STATIC_JAVA_LIBRARIES := junit
+
+LOCAL_MODULE := Launcher3HostTests
+
+include $(BUILD_HOST_JAVA_LIBRARY)
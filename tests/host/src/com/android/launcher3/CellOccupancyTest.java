@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the row bitmasks and the summed-area table of {@link CellOccupancy}, comparing the
+ * queries against a plain boolean grid where that is simpler than spelling out the answer.
+ */
+public class CellOccupancyTest extends TestCase {
+
+    public void testSetAndGet() {
+        final CellOccupancy grid = new CellOccupancy(5, 4);
+        grid.set(0, 0, true);
+        grid.set(4, 3, true);
+        assertTrue(grid.get(0, 0));
+        assertTrue(grid.get(4, 3));
+        assertFalse(grid.get(1, 0));
+        assertFalse(grid.get(4, 2));
+
+        grid.set(0, 0, false);
+        assertFalse(grid.get(0, 0));
+        assertTrue(grid.get(4, 3));
+    }
+
+    public void testWidestGrid() {
+        final CellOccupancy grid = new CellOccupancy(CellOccupancy.MAX_COUNT_X, 2);
+        grid.set(63, 1, true);
+        assertTrue(grid.get(63, 1));
+        assertFalse(grid.get(62, 1));
+
+        grid.markSpan(0, 0, 64, 1, true);
+        assertEquals(64, grid.countOccupied(0, 0, 64, 1));
+        assertEquals(65, grid.countOccupied(0, 0, 64, 2));
+    }
+
+    public void testTooWide() {
+        try {
+            new CellOccupancy(CellOccupancy.MAX_COUNT_X + 1, 1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testMarkSpanClipsToGrid() {
+        final CellOccupancy grid = new CellOccupancy(4, 4);
+        grid.markSpan(-1, -1, 2, 2, true);
+        assertEquals(1, grid.countOccupied(0, 0, 4, 4));
+        assertTrue(grid.get(0, 0));
+
+        grid.markSpan(3, 3, 5, 5, true);
+        assertEquals(2, grid.countOccupied(0, 0, 4, 4));
+        assertTrue(grid.get(3, 3));
+
+        // Entirely outside of the grid
+        grid.markSpan(4, 0, 2, 2, true);
+        grid.markSpan(-3, 0, 2, 2, true);
+        assertEquals(2, grid.countOccupied(0, 0, 4, 4));
+
+        grid.markSpan(-1, -1, 10, 10, false);
+        assertEquals(0, grid.countOccupied(0, 0, 4, 4));
+    }
+
+    public void testCountOccupiedFollowsChanges() {
+        final CellOccupancy grid = new CellOccupancy(6, 5);
+        assertEquals(0, grid.countOccupied(0, 0, 6, 5));
+
+        grid.markSpan(1, 1, 3, 2, true);
+        assertEquals(6, grid.countOccupied(0, 0, 6, 5));
+        assertEquals(4, grid.countOccupied(2, 1, 2, 3));
+        assertEquals(0, grid.countOccupied(4, 0, 2, 5));
+
+        // The table is rebuilt after every kind of change
+        grid.set(5, 4, true);
+        assertEquals(7, grid.countOccupied(0, 0, 6, 5));
+        grid.markSpan(1, 1, 1, 2, false);
+        assertEquals(5, grid.countOccupied(0, 0, 6, 5));
+        grid.clear();
+        assertEquals(0, grid.countOccupied(0, 0, 6, 5));
+    }
+
+    public void testCountOccupiedMatchesCellByCellCount() {
+        final CellOccupancy grid = HostBenchmarks.randomGrid(7, 6, 0.5f, 1);
+        for (int y = 0; y < grid.countY; y++) {
+            for (int x = 0; x < grid.countX; x++) {
+                for (int spanY = 1; y + spanY <= grid.countY; spanY++) {
+                    for (int spanX = 1; x + spanX <= grid.countX; spanX++) {
+                        assertEquals("span " + spanX + "x" + spanY + " at " + x + "," + y,
+                                countCells(grid, x, y, spanX, spanY),
+                                grid.countOccupied(x, y, spanX, spanY));
+                    }
+                }
+            }
+        }
+    }
+
+    public void testIsSpanFree() {
+        final CellOccupancy grid = new CellOccupancy(4, 4);
+        grid.set(2, 2, true);
+        assertTrue(grid.isSpanFree(0, 0, 2, 2));
+        assertTrue(grid.isSpanFree(0, 0, 4, 2));
+        assertFalse(grid.isSpanFree(1, 1, 2, 2));
+        assertFalse(grid.isSpanFree(2, 2, 1, 1));
+
+        // Spans leaving the grid are never free
+        assertFalse(grid.isSpanFree(-1, 0, 1, 1));
+        assertFalse(grid.isSpanFree(0, -1, 1, 1));
+        assertFalse(grid.isSpanFree(3, 0, 2, 1));
+        assertFalse(grid.isSpanFree(0, 3, 1, 2));
+    }
+
+    public void testFindFirstVacant() {
+        final CellOccupancy grid = new CellOccupancy(4, 4);
+        final int[] cell = new int[2];
+        assertTrue(grid.findFirstVacant(1, 1, cell));
+        assertCell(0, 0, cell);
+
+        grid.markSpan(0, 0, 3, 1, true);
+        assertTrue(grid.findFirstVacant(1, 1, cell));
+        assertCell(3, 0, cell);
+        assertTrue(grid.findFirstVacant(2, 2, cell));
+        assertCell(0, 1, cell);
+
+        grid.set(1, 1, true);
+        assertTrue(grid.findFirstVacant(2, 2, cell));
+        assertCell(2, 1, cell);
+
+        // A null result only answers whether there is room
+        assertTrue(grid.findFirstVacant(4, 2, null));
+        assertFalse(grid.findFirstVacant(4, 4, null));
+        assertFalse(grid.findFirstVacant(5, 1, null));
+
+        grid.markSpan(0, 0, 4, 4, true);
+        cell[0] = cell[1] = 7;
+        assertFalse(grid.findFirstVacant(1, 1, cell));
+        assertCell(7, 7, cell);
+    }
+
+    public void testFindFirstVacantMatchesScan() {
+        for (int seed = 0; seed < 20; seed++) {
+            final CellOccupancy grid = HostBenchmarks.randomGrid(5, 5, 0.4f, seed);
+            final int[] cell = new int[2];
+            for (int spanY = 1; spanY <= 3; spanY++) {
+                for (int spanX = 1; spanX <= 3; spanX++) {
+                    final int[] expected = scanFirstVacant(grid, spanX, spanY);
+                    assertEquals(expected != null, grid.findFirstVacant(spanX, spanY, cell));
+                    if (expected != null) {
+                        assertCell(expected[0], expected[1], cell);
+                    }
+                }
+            }
+        }
+    }
+
+    public void testFindNearest() {
+        // Cells 100px apart, centers at 50, 150, ... all scaled by two
+        final CellOccupancy grid = new CellOccupancy(4, 4);
+        final int[] cell = new int[2];
+        grid.findNearest(2 * 260, 2 * 140, 100, 100, 200, 200, 1, 1, true, cell);
+        assertCell(2, 1, cell);
+
+        // Far outside of the grid picks the closest edge cell
+        grid.findNearest(2 * 1000, -2 * 1000, 100, 100, 200, 200, 1, 1, true, cell);
+        assertCell(3, 0, cell);
+
+        // An occupied cell is skipped only when a vacant one is asked for
+        grid.set(2, 1, true);
+        grid.findNearest(2 * 250, 2 * 150, 100, 100, 200, 200, 1, 1, false, cell);
+        assertCell(2, 1, cell);
+        grid.findNearest(2 * 260, 2 * 150, 100, 100, 200, 200, 1, 1, true, cell);
+        assertCell(3, 1, cell);
+
+        // Spans are placed by their top-left cell and must fit in the grid
+        grid.findNearest(2 * 350, 2 * 350, 100, 100, 200, 200, 2, 2, true, cell);
+        assertCell(2, 2, cell);
+    }
+
+    public void testFindNearestTiesGoToLaterCell() {
+        final CellOccupancy grid = new CellOccupancy(4, 4);
+        final int[] cell = new int[2];
+        // Exactly between the centers of (1, 1) and (2, 1)
+        grid.findNearest(2 * 200, 2 * 150, 100, 100, 200, 200, 1, 1, true, cell);
+        assertCell(2, 1, cell);
+        // Exactly between the centers of (1, 1), (2, 1), (1, 2) and (2, 2)
+        grid.findNearest(2 * 200, 2 * 200, 100, 100, 200, 200, 1, 1, true, cell);
+        assertCell(2, 2, cell);
+    }
+
+    public void testFindNearestNoRoom() {
+        final CellOccupancy grid = new CellOccupancy(3, 3);
+        grid.markSpan(0, 0, 3, 3, true);
+        final int[] cell = new int[2];
+        assertSame(cell, grid.findNearest(0, 0, 100, 100, 200, 200, 1, 1, true, cell));
+        assertCell(-1, -1, cell);
+
+        grid.set(1, 1, false);
+        grid.findNearest(0, 0, 100, 100, 200, 200, 2, 1, true, cell);
+        assertCell(-1, -1, cell);
+        grid.findNearest(0, 0, 100, 100, 200, 200, 4, 1, false, cell);
+        assertCell(-1, -1, cell);
+    }
+
+    public void testFindNearestMatchesScan() {
+        final int[] cell = new int[2];
+        for (int seed = 0; seed < 10; seed++) {
+            final CellOccupancy grid = HostBenchmarks.randomGrid(6, 5, 0.5f, seed);
+            for (int py = -50; py < 600; py += 37) {
+                for (int px = -50; px < 700; px += 41) {
+                    final int[] expected = scanNearest(grid, px, py, 2, 1);
+                    grid.findNearest(2 * px, 2 * py, 100, 100, 200, 200, 2, 1, true, cell);
+                    assertCell(expected[0], expected[1], cell);
+                }
+            }
+        }
+    }
+
+    private static void assertCell(int x, int y, int[] cell) {
+        assertEquals("x", x, cell[0]);
+        assertEquals("y", y, cell[1]);
+    }
+
+    private static int countCells(CellOccupancy grid, int cellX, int cellY, int spanX,
+            int spanY) {
+        int count = 0;
+        for (int y = cellY; y < cellY + spanY; y++) {
+            for (int x = cellX; x < cellX + spanX; x++) {
+                if (grid.get(x, y)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int[] scanFirstVacant(CellOccupancy grid, int spanX, int spanY) {
+        for (int y = 0; y + spanY <= grid.countY; y++) {
+            for (int x = 0; x + spanX <= grid.countX; x++) {
+                if (countCells(grid, x, y, spanX, spanY) == 0) {
+                    return new int[] { x, y };
+                }
+            }
+        }
+        return null;
+    }
+
+    /** The nearest vacant span for cells 100px apart, with doubles like CellLayout used. */
+    private static int[] scanNearest(CellOccupancy grid, int pointX, int pointY, int spanX,
+            int spanY) {
+        final int[] best = { -1, -1 };
+        double bestDistance = Double.MAX_VALUE;
+        for (int y = 0; y + spanY <= grid.countY; y++) {
+            for (int x = 0; x + spanX <= grid.countX; x++) {
+                if (countCells(grid, x, y, spanX, spanY) != 0) {
+                    continue;
+                }
+                final double distance = Math.hypot(50 + x * 100 - pointX, 50 + y * 100 - pointY);
+                if (distance <= bestDistance) {
+                    bestDistance = distance;
+                    best[0] = x;
+                    best[1] = y;
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+import java.util.Random;
+
+/**
+ * Micro-benchmarks of the launcher classes which run on a plain JVM: the cell searches of
+ * {@link CellOccupancy} and the outline blur of {@link AlphaBlur}.
+ *
+ * Each benchmark is warmed up, then timed over several rounds; the fastest round is reported,
+ * in nanoseconds per operation. Pass benchmark names to run only those.
+ */
+public class HostBenchmarks {
+    private static final int WARMUP_MS = 500;
+    private static final int ROUND_MS = 200;
+    private static final int ROUNDS = 5;
+    private static final int MAX_REPS = 1 << 24;
+
+    private abstract static class Benchmark {
+        final String name;
+
+        Benchmark(String name) {
+            this.name = name;
+        }
+
+        /** Runs the operation reps times, returns something so the JIT cannot drop the work. */
+        abstract int run(int reps);
+    }
+
+    /** Keeps the results alive. */
+    private static int sSink;
+
+    /**
+     * Returns a grid with about the given fraction of its cells taken, from a fixed seed.
+     */
+    static CellOccupancy randomGrid(int countX, int countY, float occupied, long seed) {
+        final Random random = new Random(seed);
+        final CellOccupancy grid = new CellOccupancy(countX, countY);
+        for (int y = 0; y < countY; y++) {
+            for (int x = 0; x < countX; x++) {
+                grid.set(x, y, random.nextFloat() < occupied);
+            }
+        }
+        return grid;
+    }
+
+    private static Benchmark[] createBenchmarks() {
+        // Several desktops, cycled through so the JIT cannot hoist the search out of the loop
+        final CellOccupancy[] desktops = new CellOccupancy[4];
+        for (int i = 0; i < desktops.length; i++) {
+            desktops[i] = randomGrid(4, 4, 0.6f, 10 + i);
+        }
+        final CellOccupancy large = randomGrid(8, 8, 0.6f, 2);
+        final CellOccupancy full = randomGrid(8, 8, 1f, 3);
+        final int[] cell = new int[2];
+        final AlphaBlur blur = new AlphaBlur();
+        // An icon outline, and an outline large enough to be split over the pool
+        final int[] icon = new int[96 * 96];
+        final int[] widget = new int[512 * 512];
+
+        return new Benchmark[] {
+            new Benchmark("findFirstVacant4x4") {
+                int run(int reps) {
+                    int sum = 0;
+                    for (int i = 0; i < reps; i++) {
+                        if (desktops[i & 3].findFirstVacant(1, 1, cell)) {
+                            sum += cell[0] + cell[1];
+                        }
+                    }
+                    return sum;
+                }
+            },
+            new Benchmark("findFirstVacant8x8Span2x2") {
+                int run(int reps) {
+                    int found = 0;
+                    for (int i = 0; i < reps; i++) {
+                        if (large.findFirstVacant(2, 2, cell)) {
+                            found++;
+                        }
+                    }
+                    return found;
+                }
+            },
+            new Benchmark("findFirstVacant8x8Full") {
+                int run(int reps) {
+                    int found = 0;
+                    for (int i = 0; i < reps; i++) {
+                        if (full.findFirstVacant(1, 1, cell)) {
+                            found++;
+                        }
+                    }
+                    return found;
+                }
+            },
+            new Benchmark("findNearest8x8") {
+                int run(int reps) {
+                    int sum = 0;
+                    for (int i = 0; i < reps; i++) {
+                        // Cells 100px apart, the point moves like a drag would
+                        large.findNearest(2 * (i % 800), 2 * ((i / 8) % 800), 100, 100, 200, 200,
+                                2, 2, true, cell);
+                        sum += cell[0];
+                    }
+                    return sum;
+                }
+            },
+            new Benchmark("markSpanAndIsSpanFree8x8") {
+                int run(int reps) {
+                    int free = 0;
+                    for (int i = 0; i < reps; i++) {
+                        final int x = i % 7;
+                        final int y = (i / 7) % 7;
+                        // Every mark invalidates the summed-area table
+                        large.markSpan(x, y, 1, 1, (i & 1) == 0);
+                        if (large.isSpanFree(y, x, 2, 2)) {
+                            free++;
+                        }
+                    }
+                    return free;
+                }
+            },
+            new Benchmark("blurIcon96") {
+                int run(int reps) {
+                    for (int i = 0; i < reps; i++) {
+                        fillDisc(icon, 96, 96);
+                        blur.blur(icon, 96, 96, AlphaBlur.sigmaForRadius(6f));
+                    }
+                    return icon[96 * 48 + 48];
+                }
+            },
+            new Benchmark("blurWidget512") {
+                int run(int reps) {
+                    for (int i = 0; i < reps; i++) {
+                        fillDisc(widget, 512, 512);
+                        blur.blur(widget, 512, 512, AlphaBlur.sigmaForRadius(12f));
+                    }
+                    return widget[512 * 256 + 256];
+                }
+            },
+        };
+    }
+
+    /**
+     * Fills the buffer with an opaque disc on a transparent background, like an icon shape.
+     */
+    static void fillDisc(int[] alpha, int width, int height) {
+        final int cx = width / 2;
+        final int cy = height / 2;
+        final int r2 = (Math.min(width, height) / 3) * (Math.min(width, height) / 3);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int dx = x - cx;
+                final int dy = y - cy;
+                alpha[y * width + x] = dx * dx + dy * dy <= r2 ? 255 : 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the fastest time per operation over {@link #ROUNDS} rounds, in nanoseconds.
+     */
+    private static double measure(Benchmark benchmark) {
+        // Find a rep count which takes about ROUND_MS, warming up on the way
+        int reps = 1;
+        final long warmupEnd = System.nanoTime() + WARMUP_MS * 1000000L;
+        long elapsed;
+        do {
+            final long start = System.nanoTime();
+            sSink += benchmark.run(reps);
+            elapsed = System.nanoTime() - start;
+            if (elapsed < ROUND_MS * 1000000L && reps < MAX_REPS) {
+                reps *= 2;
+            }
+        } while ((elapsed < ROUND_MS * 1000000L && reps < MAX_REPS)
+                || System.nanoTime() < warmupEnd);
+
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            final long start = System.nanoTime();
+            sSink += benchmark.run(reps);
+            best = Math.min(best, (double) (System.nanoTime() - start) / reps);
+        }
+        return best;
+    }
+
+    public static void main(String[] args) {
+        for (Benchmark benchmark : createBenchmarks()) {
+            if (args.length > 0 && !contains(args, benchmark.name)) {
+                continue;
+            }
+            System.out.println(String.format("%-28s %12.1f ns/op", benchmark.name,
+                    measure(benchmark)));
+        }
+        if (sSink == 42) {
+            System.out.println();
+        }
+    }
+
+    private static boolean contains(String[] names, String name) {
+        for (String n : names) {
+            if (n.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}